@@ -1,14 +1,49 @@
 package amazons;
 
-import java.util.Iterator;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import static java.lang.Math.*;
 
 import static amazons.Piece.*;
 
-/** A Player that automatically generates moves.
+/** A Player that automatically generates moves.  Moves are searched in
+ *  order: the best move stored in the transposition table for the
+ *  position (which, at the root, is the previous iteration's choice),
+ *  then this ply's killer moves, then the rest by the history heuristic,
+ *  which credits a move's queen step and its spear throw separately each
+ *  time the move causes a cutoff.  With more than one
+ *  thread (see setThreads), the search is "Lazy SMP": helper AIs search
+ *  the same position at the same time on their own Board copies,
+ *  starting at staggered depths and trying root moves in rotated
+ *  orders, and communicate only through the shared transposition table.
+ *  In split-ply mode (see setSplitPly), the queen step and the spear
+ *  throw of each move are searched as separate half-plies, so that a
+ *  queen step can be evaluated, and cut off, before its spear throws
+ *  are generated.  Searches stop at a deadline set by a timer thread,
+ *  which raises a flag that the search polls every POLL_INTERVAL nodes.
+ *  In a timed game (see Clock), each move gets a share of the time left
+ *  based on the number of moves likely still to matter: a soft limit,
+ *  after which no new iteration is started (or half of it, once the best
+ *  move has stopped changing), and a hard limit, at which the search is
+ *  stopped.  Untimed, every move gets FOREVER.  If set to ponder (see
+ *  setPonder), the AI also searches while its opponent thinks, on the
+ *  position after the move it expects; the results it leaves in the
+ *  transposition table speed up its own search of its reply.  Once
+ *  the queens of the two sides are separated by spears, the AI plays
+ *  perfectly by counting the moves left in each region (see Endgame),
+ *  as soon as that fits within the solver's budget, or at once if the
+ *  regions are in its tablebase (see setTablebase).  Before either,
+ *  it plays from its opening book, if it has one (see setBook).
  *  @author Ruochen Liu
  */
 class AI extends Player {
@@ -18,14 +53,20 @@ class AI extends Player {
     private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
     /** A magnitude greater than a normal value. */
     private static final int INFTY = Integer.MAX_VALUE;
+    /** Default size of the transposition table in megabytes. */
+    static final int DEFAULT_HASH_SIZE = 64;
+    /** Deepest iteration findMove will start. */
+    private static final int MAX_DEPTH = 60;
     /** Limited duration time. */
     private static final Duration FOREVER = Duration.ofNanos(1100000000);
-    /** My starting time. */
-    private Instant now;
-    /** Compare the runtime and duration.*/
-    private Boolean ifStop = false;
+    /** True when my search is to stop.  Set by the timer, or by the AI
+     *  whose helper I am. */
+    private volatile boolean _stopRequested;
+    /** True once my search has seen _stopRequested and is unwinding.
+     *  Only read and written by the searching thread. */
+    private boolean ifStop = false;
     /** whether the search is exhausted. */
-    private Boolean exhausted = false;
+    private boolean exhausted = false;
 
     /** A new AI with no piece or controller (intended to produce
      *  a template). */
@@ -40,7 +81,130 @@ class AI extends Player {
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        AI result = new AI(piece, controller);
+        result._hashSize = _hashSize;
+        result._threads = _threads;
+        result._splitPly = _splitPly;
+        result._ponder = _ponder;
+        result._book = _book;
+        result.setTablebase(_tablebase);
+        return result;
+    }
+
+    /** Use a transposition table of MEGABYTES megabytes in AIs created
+     *  from me. */
+    void setHashSize(int megabytes) {
+        if (megabytes <= 0) {
+            throw Utils.error("hash size must be positive");
+        }
+        _hashSize = megabytes;
+    }
+
+    /** Search with THREADS threads in AIs created from me. */
+    void setThreads(int threads) {
+        if (threads <= 0) {
+            throw Utils.error("thread count must be positive");
+        }
+        _threads = threads;
+    }
+
+    /** Search queen steps and spear throws as separate half-plies iff
+     *  SPLIT in AIs created from me. */
+    void setSplitPly(boolean split) {
+        _splitPly = split;
+    }
+
+    /** Search on my opponent's time iff PONDER in AIs created from me. */
+    void setPonder(boolean ponder) {
+        _ponder = ponder;
+    }
+
+    /** Play from BOOK, or from no book if BOOK is null, in AIs created
+     *  from me. */
+    void setBook(Book book) {
+        _book = book;
+    }
+
+    /** Look the values of single-owner regions up in TABLEBASE, or in no
+     *  tablebase if it is null, both in the endgame solver and in
+     *  evaluating positions, in me and in AIs created from me. */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
+        _evaluator.setTablebase(tablebase);
+        _endgame.setTablebase(tablebase);
+    }
+
+    @Override
+    void ponder() {
+        if (!_ponder || _pondering != null || board().turn() == _myPiece
+            || board().winner() != null) {
+            return;
+        }
+        prepareSearch();
+        _softLimit = Long.MAX_VALUE;
+        Board copy = new Board(board());
+        _pondering = HELPER_POOL.submit(() -> {
+                ponderOn(copy);
+            });
+    }
+
+    /** Search BOARD, my opponent's position, until stopped: the position
+     *  after the move my opponent is expected to make, so that if it
+     *  makes it, most of my search of my reply is already in the
+     *  transposition table. */
+    private void ponderOn(Board board) {
+        int guess = expectedMove(board);
+        if (guess == Move.NONE) {
+            ifStop = false;
+            _rootDepth = firstDepth();
+            searchRoot(board, _rootDepth, -INFTY, INFTY);
+            guess = ifStop ? Move.NONE : _lastFoundMove;
+        }
+        if (guess != Move.NONE) {
+            board.makeMove(guess);
+            if (board.winner() == null) {
+                iterate(board, firstDepth());
+            }
+        }
+    }
+
+    /** Return the best move from BOARD according to the transposition
+     *  table (typically left there by my search of the move that led to
+     *  BOARD), or Move.NONE if there is no legal one. */
+    int expectedMove(Board board) {
+        int move = TranspositionTable.move(_table.probe(board.hash()));
+        if (move != Move.NONE && _splitPly) {
+            int from = Move.packedFrom(move), to = Move.packedTo(move);
+            if (!board.isLegal(Square.sq(from), Square.sq(to))) {
+                return Move.NONE;
+            }
+            board.moveQueen(from, to);
+            move = TranspositionTable.move(_table.probe(board.hash()));
+            board.undoQueen();
+        }
+        if (move == Move.NONE
+            || !board.isLegal(Square.sq(Move.packedFrom(move)),
+                              Square.sq(Move.packedTo(move)),
+                              Square.sq(Move.packedSpear(move)))) {
+            return Move.NONE;
+        }
+        return move;
+    }
+
+    @Override
+    void stopPondering() {
+        if (_pondering == null) {
+            return;
+        }
+        _stopRequested = true;
+        try {
+            _pondering.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException("pondering failed: "
+                                            + excp.getMessage());
+        }
+        _pondering = null;
+        _pondered = true;
     }
 
     @Override
@@ -51,127 +215,884 @@ class AI extends Player {
     }
 
     /** Return a move for me from the current position, assuming there
-     *  is a move. */
-
-    private Move findMove() {
-        Board b = new Board(board());
-        int depth = 1;
-        Move result = null;
-        ifStop = false;
-        exhausted = false;
-        now = Instant.now();
-        while (!ifStop && !exhausted) {
-            result = _lastFoundMove;
-            if (_myPiece == WHITE) {
-                findMove(b, depth, true, 1, -INFTY, INFTY);
-            } else {
-                findMove(b, depth, true, -1, -INFTY, INFTY);
+     *  is a move: the book move (see setBook) if there is one, or the
+     *  endgame solver's if it can solve the position, and otherwise the
+     *  result of a search. */
+    Move findMove() {
+        SearchEvents.MoveSelected event = new SearchEvents.MoveSelected();
+        event.begin();
+        prepareSearch();
+        long start = _searchStart;
+        int move = _book == null ? Move.NONE : _book.move(board());
+        if (move != Move.NONE) {
+            _lastShortcut = "book";
+            _lastNodes = 0;
+        } else if (Endgame.separated(board())) {
+            move = _endgame.bestMove(new Board(board()));
+            _lastShortcut = "endgame";
+            _lastNodes = _endgame.nodes();
+        }
+        if (move != Move.NONE) {
+            _lastNanos = System.nanoTime() - start;
+        } else {
+            move = search(board(), budget());
+        }
+        if (event.shouldCommit()) {
+            event.side = _myPiece.toName();
+            event.move = Move.mv(move).toString();
+            event.source = _lastShortcut == null ? "search" : _lastShortcut;
+            event.depth = _lastShortcut == null ? _lastDepth : 0;
+            event.nodes = _lastNodes;
+            event.threads = _lastShortcut == null ? _threads : 1;
+            event.commit();
+        }
+        return Move.mv(move);
+    }
+
+    /** Return the move chosen by a search of BOARD, in which the side to
+     *  move has a legal move, taking at most NANOS nanoseconds, packed as
+     *  by Move.pack.  BOARD is not changed.  Unlike myMove, needs no
+     *  Controller, and ignores the book and the endgame solver. */
+    int searchMove(Board board, long nanos) {
+        prepareSearch();
+        _softLimit = Long.MAX_VALUE;
+        return search(board, nanos);
+    }
+
+    /** Return the move chosen by a search of BOARD, in which the side to
+     *  move has a legal move, to DEPTH moves (half-plies in split-ply
+     *  mode), packed as by Move.pack.  BOARD is not changed.  The search
+     *  is deterministic (see searchFixed). */
+    int searchDepth(Board board, int depth) {
+        if (depth <= 0) {
+            throw Utils.error("search depth must be positive");
+        }
+        return searchFixed(board, depth, 0);
+    }
+
+    /** Return the move chosen by a search of BOARD, in which the side to
+     *  move has a legal move, stopped after NODES nodes, packed as by
+     *  Move.pack.  BOARD is not changed.  The search is deterministic
+     *  (see searchFixed). */
+    int searchNodes(Board board, long nodes) {
+        if (nodes <= 0) {
+            throw Utils.error("node limit must be positive");
+        }
+        return searchFixed(board, 0, nodes);
+    }
+
+    /** Return the move chosen by a search of BOARD, in which the side to
+     *  move has a legal move, to DEPTH moves and NODES nodes (either
+     *  unlimited if 0), packed as by Move.pack.  The search has no time
+     *  limit or helpers, and starts from an empty transposition table
+     *  and history, so that it visits the same nodes every time until
+     *  the search itself changes: it is meant for measuring the
+     *  search. */
+    private int searchFixed(Board board, int depth, long nodes) {
+        if (_table == null) {
+            _table = new TranspositionTable(_hashSize);
+        }
+        _table.clear();
+        Arrays.fill(_history, 0);
+        Arrays.fill(_spearHistory, 0);
+        for (int[] killers : _killers) {
+            killers[0] = killers[1] = Move.NONE;
+        }
+        _stopRequested = false;
+        _softLimit = Long.MAX_VALUE;
+        _searchStart = System.nanoTime();
+        _depthLimit = depth;
+        _nodeLimit = nodes;
+        int result = iterate(new Board(board), firstDepth());
+        _depthLimit = 0;
+        _nodeLimit = 0;
+        _stats.addThread(_completedDepth, _nodes);
+        _lastStats = _stats;
+        _lastShortcut = null;
+        _lastDepth = _completedDepth;
+        _lastNodes = _nodes;
+        _lastNanos = System.nanoTime() - _searchStart;
+        return result == Move.NONE ? firstMove(board) : result;
+    }
+
+    /** Return the move chosen by a search of BOARD, in which the side to
+     *  move has a legal move, stopped after HARDLIMIT nanoseconds, packed
+     *  as by Move.pack.  Uses the result of whichever thread completed
+     *  the deepest iteration, preferring mine. */
+    private int search(Board board, long hardLimit) {
+        long start = _searchStart;
+        ScheduledFuture<?> timer =
+            TIMER.schedule(() -> {
+                    _stopRequested = true;
+                }, hardLimit, NANOSECONDS);
+        Future<?>[] running = startHelpers(board);
+        int result = iterate(new Board(board), firstDepth());
+        timer.cancel(false);
+        int depth = _completedDepth;
+        long nodes = _nodes;
+        SearchStats stats = _stats;
+        stats.addThread(depth, nodes);
+        for (int k = 0; k < running.length; k += 1) {
+            _helpers[k]._stopRequested = true;
+        }
+        for (int k = 0; k < running.length; k += 1) {
+            try {
+                running[k].get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException("helper search failed: "
+                                                + excp.getMessage());
+            }
+            AI helper = _helpers[k];
+            nodes += helper._nodes;
+            stats.addThread(helper._completedDepth, helper._nodes);
+            if (helper._completedDepth > depth) {
+                depth = helper._completedDepth;
+                result = helper._bestMove;
+            }
+        }
+        _lastShortcut = null;
+        _lastStats = stats;
+        _lastDepth = depth;
+        _lastNodes = nodes;
+        _lastNanos = System.nanoTime() - start;
+        return result == Move.NONE ? firstMove(board) : result;
+    }
+
+    /** Return the first legal move generated in BOARD, in which the side
+     *  to move has one, packed as by Move.pack: the choice of a search
+     *  stopped before it found any move. */
+    private int firstMove(Board board) {
+        MoveList moves = moveList(0);
+        moves.clear();
+        board.generateMoves(board.turn(), moves);
+        return moves.get(0);
+    }
+
+    /** Prepare for a new search (of my move or, when pondering, my
+     *  opponent's): create my transposition table if need be, age it and
+     *  my history scores unless I have just been pondering (so that the
+     *  search continues the same generation), and start the clock. */
+    private void prepareSearch() {
+        if (_table == null) {
+            _table = new TranspositionTable(_hashSize);
+        }
+        if (!_pondered) {
+            _table.newSearch();
+            ageHistory();
+        }
+        _pondered = false;
+        _stopRequested = false;
+        _searchStart = System.nanoTime();
+    }
+
+    /** Set _softLimit for my next move and return its hard limit, both
+     *  in nanoseconds. */
+    long budget() {
+        Clock clock = _controller.clock();
+        if (!clock.timed()) {
+            _softLimit = Long.MAX_VALUE;
+            return FOREVER.toNanos();
+        }
+        int moves = (_evaluator.contested(board()) + 1) / 2;
+        _softLimit = clock.moveTime(_myPiece, moves);
+        return max(_softLimit, min(clock.maxMoveTime(_myPiece),
+                                   _softLimit * HARD_LIMIT_FACTOR));
+    }
+
+    /** Return true iff my search should not start another iteration,
+     *  given that the last one completed found the same move as the
+     *  STABLE previous ones. */
+    private boolean pastSoftLimit(int stable) {
+        long elapsed = System.nanoTime() - _searchStart;
+        return elapsed >= _softLimit
+            || (stable >= STABLE_ITERATIONS && elapsed >= _softLimit / 2);
+    }
+
+    /** Start a search of BOARD by each of my helpers (if any) on the
+     *  shared pool, and return the tasks. */
+    private Future<?>[] startHelpers(Board board) {
+        if (_helpers == null) {
+            _helpers = new AI[_threads - 1];
+            for (int k = 0; k < _helpers.length; k += 1) {
+                _helpers[k] = new AI(_myPiece, _controller);
+                _helpers[k]._table = _table;
+                _helpers[k]._rootOffset = k + 1;
+                _helpers[k]._splitPly = _splitPly;
+                _helpers[k].setTablebase(_tablebase);
             }
-            depth += 1;
         }
+        Future<?>[] result = new Future<?>[_helpers.length];
+        for (int k = 0; k < _helpers.length; k += 1) {
+            AI helper = _helpers[k];
+            Board copy = new Board(board);
+            int depth = firstDepth() + helper._rootOffset % 2;
+            helper._stopRequested = false;
+            helper._searchStart = _searchStart;
+            result[k] = HELPER_POOL.submit(() -> {
+                helper._bestMove = helper.iterate(copy, depth);
+            });
+        }
+        return result;
+    }
+
+    /** Return the depth of the first iteration of a search: one move,
+     *  which is two half-plies in split-ply mode. */
+    private int firstDepth() {
+        return _splitPly ? 2 : 1;
+    }
 
-        if (depth == 2) {
-            result = _lastFoundMove;
-        } else if (exhausted && !ifStop) {
-            result = _lastFoundMove;
+    /** Search BOARD by iterative deepening, starting with depth START,
+     *  until time runs out, the search is exhausted or MAX_DEPTH moves
+     *  (or _depthLimit, if set) are passed.  Depths are in half-plies
+     *  in split-ply mode.  After the first two, each iteration searches a
+     *  narrow aspiration window around the value found two iterations
+     *  before (values swing between odd and even depths, since the side
+     *  that moved last always looks better), widening it on the failing
+     *  side and searching again only if the value falls outside.  Return
+     *  the move found by the deepest completed iteration (or by the
+     *  incomplete first one, if no iteration completed), and set
+     *  _completedDepth, _completedScore and _nodes. */
+    private int iterate(Board board, int start) {
+        int result = Move.NONE;
+        exhausted = ifStop = false;
+        _nodes = _probes = _hashHits = _cutoffs = _firstCutoffs = 0;
+        _stats = new SearchStats();
+        _completedDepth = 0;
+        int last = _depthLimit > 0 ? _depthLimit
+            : _splitPly ? 2 * MAX_DEPTH : MAX_DEPTH;
+        int score, previous, stable;
+        score = previous = stable = 0;
+        for (int depth = start; !ifStop && !exhausted && depth <= last
+                 && !pastSoftLimit(stable); depth += 1) {
+            _rootDepth = depth;
+            SearchEvents.Iteration event = new SearchEvents.Iteration();
+            event.begin();
+            int delta = ASPIRATION_WINDOW;
+            boolean wide = depth < start + 2;
+            int alpha = wide ? -INFTY : clamp((long) previous - delta);
+            int beta = wide ? INFTY : clamp((long) previous + delta);
+            while (true) {
+                int value = searchRoot(board, depth, alpha, beta);
+                if (ifStop) {
+                    if (_lastFoundMove != Move.NONE
+                        && (result == Move.NONE || _lastFoundSafe)) {
+                        result = _lastFoundMove;
+                    }
+                    break;
+                }
+                delta = clamp((long) delta * ASPIRATION_GROWTH);
+                if (value <= alpha && alpha > -INFTY) {
+                    alpha = clamp((long) value - delta);
+                } else if (value >= beta && beta < INFTY) {
+                    beta = clamp((long) value + delta);
+                } else {
+                    previous = score;
+                    score = value;
+                    stable = _lastFoundMove == result ? stable + 1 : 0;
+                    result = _lastFoundMove;
+                    _completedDepth = depth;
+                    _completedScore = value;
+                    recordIteration(event, depth, value, result);
+                    break;
+                }
+            }
         }
         return result;
     }
 
+    /** Search BOARD, the root position, DEPTH levels deep with the window
+     *  ALPHA to BETA, by findMove or findSplitMove as appropriate.  Return
+     *  its value for the side to move and record the move found in
+     *  _lastFoundMove. */
+    private int searchRoot(Board board, int depth, int alpha, int beta) {
+        int sense = board.turn() == WHITE ? 1 : -1;
+        if (_splitPly) {
+            return findSplitMove(board, depth, true, sense, alpha, beta);
+        }
+        return findMove(board, depth, true, sense, alpha, beta);
+    }
+
+    /** Record in _stats, and in EVENT if it is being recorded, the
+     *  completion of iteration DEPTH, whose value for the side to move
+     *  was SCORE and whose move was MOVE, packed as by Move.pack. */
+    private void recordIteration(SearchEvents.Iteration event, int depth,
+                                 int score, int move) {
+        _stats.addIteration(depth, score, move, _nodes, _probes, _hashHits,
+                            _cutoffs, _firstCutoffs,
+                            System.nanoTime() - _searchStart);
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.score = score;
+            event.move = Move.mv(move).toString();
+            event.nodes = _nodes;
+            event.cutoffs = _cutoffs;
+            event.helper = _rootOffset;
+            event.commit();
+        }
+    }
+
+    /** Return the entry for KEY in my transposition table (see
+     *  TranspositionTable.probe), counting the probe and whether it
+     *  found an entry. */
+    private long probe(long key) {
+        long result = _table.probe(key);
+        _probes += 1;
+        if (result != 0) {
+            _hashHits += 1;
+        }
+        return result;
+    }
+
+    /** Return VALUE limited to the range -INFTY to INFTY. */
+    private static int clamp(long value) {
+        return (int) max(-INFTY, min(INFTY, value));
+    }
+
+    /** Return a one-line summary of my last search: the depth of the
+     *  deepest completed iteration over all threads (or "book" or
+     *  "endgame" if the move came from the book or the endgame solver),
+     *  the nodes visited by all threads, and the rate. */
+    String searchSummary() {
+        long micros = max(1, _lastNanos / NANOS_PER_MICRO);
+        if (_lastShortcut != null) {
+            return String.format("%s, %d nodes in %d ms", _lastShortcut,
+                                 _lastNodes, micros / MICROS_PER_MILLI);
+        }
+        return String.format("depth %d, %d nodes in %d ms (%d knps),"
+                             + " %d threads", _lastDepth, _lastNodes,
+                             micros / MICROS_PER_MILLI,
+                             _lastNodes * MICROS_PER_MILLI / micros,
+                             _threads);
+    }
+
+    /** Return the statistics of my last search: its summary, then for a
+     *  search (rather than a book move or an endgame solution), its
+     *  statistics by iteration and by thread (see SearchStats). */
+    @Override
+    String searchStats() {
+        if (_lastShortcut == null && _lastStats == null) {
+            return null;
+        }
+        String summary = searchSummary() + String.format("%n");
+        return _lastShortcut != null ? summary : summary + _lastStats;
+    }
+
+    /** Return my transposition table, or null if I have not yet
+     *  searched. */
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /** Return the deepest iteration completed by my last search, over
+     *  all threads. */
+    int lastDepth() {
+        return _lastDepth;
+    }
+
+    /** Return the value, for the side to move, found by the deepest
+     *  iteration of my last search completed by my own thread. */
+    int lastScore() {
+        return _completedScore;
+    }
+
+    /** Return the number of nodes visited by my last search, over all
+     *  threads. */
+    long lastNodes() {
+        return _lastNodes;
+    }
+
     /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
-
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
+     *  below, packed as by Move.pack. */
+    private int _lastFoundMove;
+
+    /** True iff _lastFoundMove may be used even though its search was
+     *  stopped: every move compared with it was searched completely and
+     *  it scored inside or above the search window, so that it is at
+     *  least as good as the previous iteration's move, which was searched
+     *  first. */
+    private boolean _lastFoundSafe;
+
+    /** Find a move from position BOARD and return its value from the
+     *  point of view of SENSE (1 for white, -1 for black), the side to
+     *  move, recording the move found in _lastFoundMove iff SAVEMOVE.
+     *  The move should have maximal value, or value >= BETA if there is
+     *  a cutoff.  Searches up to DEPTH levels.  Searching at level 0
+     *  simply returns a static estimate of the board value and does not
+     *  set _lastMoveFound.  Generates moves into a MoveList reserved for
+     *  DEPTH, so that no objects are created per node.  Results are
+     *  looked up in and recorded in the transposition table; a stored
+     *  result at least DEPTH deep whose bound settles the window is
+     *  returned without searching, and a stored best move is searched
+     *  first.  This is a principal variation search: moves after the
+     *  first are searched with a null window, just to show that they
+     *  are no better, and searched again with the full window only if
+     *  they are.  That cannot pay within MIN_SCOUT_DEPTH of the leaves,
+     *  where a null window prunes no more than the full one. */
     private int findMove(Board board, int depth, boolean saveMove, int sense,
                          int alpha, int beta) {
+        if (countNode()) {
+            return 0;
+        }
         if (depth == 0 || board.winner() != null) {
-            return staticScore(board);
-        } else {
-            Iterator<Move> copymoves = board.legalMoves();
-            Move result = null;
-            if (sense == 1) {
-                int maxEval = -INFTY;
-                while (!ifStop && copymoves.hasNext()) {
-                    Move temp = copymoves.next();
-                    board.makeMove(temp);
-                    int eval = findMove(board, depth - 1,
-                            false, -1, alpha, beta);
-                    maxEval = max(maxEval, eval);
-                    if (maxEval == eval) {
-                        result = temp;
-                    }
-                    alpha = max(alpha, eval);
-                    board.undo();
-                    if (beta < alpha) {
-                        break;
-                    }
+            return sense * staticScore(board);
+        }
+        long key = board.hash();
+        long entry = probe(key);
+        int hashMove = TranspositionTable.move(entry);
+        if (entry != 0 && !saveMove
+            && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                return score;
+            case TranspositionTable.LOWER:
+                if (score >= beta) {
+                    return score;
                 }
-                if (saveMove) {
-                    _lastFoundMove = result;
+                break;
+            default:
+                if (score <= alpha) {
+                    return score;
                 }
-                return maxEval;
-            } else if (sense == -1) {
-                int minEval = INFTY;
-                while (!ifStop && copymoves.hasNext()) {
-                    Move temp = copymoves.next();
-                    board.makeMove(temp);
-                    int eval = findMove(board, depth - 1,
-                            false, 1, alpha, beta);
-                    minEval = min(minEval, eval);
-                    if (minEval == eval) {
-                        result = temp;
-                    }
-                    beta = min(beta, eval);
-                    board.undo();
-                    if (beta < alpha) {
-                        break;
-                    }
+                break;
+            }
+        }
+        int alpha0 = alpha;
+        MoveList moves = moveList(depth);
+        moves.clear();
+        board.generateMoves(board.turn(), moves);
+        int ply = _rootDepth - depth;
+        int ordered = orderMoves(moves, hashMove, ply, saveMove, false);
+        int result = Move.NONE;
+        int best = -INFTY;
+        int n = moves.size();
+        for (int i = 0; i < n; i += 1) {
+            if (i - ordered >= 0 && i - ordered < PICKS) {
+                moves.pickBest(i);
+            } else if (i - ordered == PICKS) {
+                moves.sortByScore(i);
+            }
+            int move = moves.get(saveMove && i > 0
+                                 ? 1 + (i - 1 + _rootOffset) % (n - 1) : i);
+            board.makeMove(move);
+            int eval;
+            if (i == 0 || depth < MIN_SCOUT_DEPTH) {
+                eval = -findMove(board, depth - 1, false, -sense,
+                                 -beta, -alpha);
+            } else {
+                eval = -findMove(board, depth - 1, false, -sense,
+                                 -alpha - 1, -alpha);
+                if (eval > alpha && eval < beta) {
+                    eval = -findMove(board, depth - 1, false, -sense,
+                                     -beta, -alpha);
+                }
+            }
+            board.undo();
+            if (ifStop) {
+                break;
+            }
+            if (eval > best || result == Move.NONE) {
+                best = eval;
+                result = move;
+            }
+            alpha = max(alpha, eval);
+            if (alpha >= beta) {
+                recordCutoff(move, depth, ply, false, i == 0);
+                break;
+            }
+        }
+        if (saveMove) {
+            _lastFoundMove = result;
+            _lastFoundSafe = !ifStop || best > alpha0;
+        }
+        if (!ifStop) {
+            int bound = best <= alpha0 ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+            _table.store(key, depth, bound, best, result);
+        }
+        return best;
+    }
+
+    /** As for findMove, but in split-ply mode: DEPTH counts half-plies,
+     *  and BOARD may have a spear throw pending (see Board.moveQueen).
+     *  A position with no spear pending has the queen steps of the side
+     *  to move as children, which that side also moves next from, so
+     *  their values are not negated; a position with a spear pending has
+     *  the completed moves as children.  Searching at level 0 with a
+     *  spear pending estimates the value of the position after the queen
+     *  step.  With SAVEMOVE, the complete move found is recorded in
+     *  _lastFoundMove: at the root, that is the best queen step together
+     *  with the best spear throw its child recorded. */
+    private int findSplitMove(Board board, int depth, boolean saveMove,
+                              int sense, int alpha, int beta) {
+        if (countNode()) {
+            return 0;
+        }
+        if (depth == 0 || board.winner() != null) {
+            return sense * staticScore(board);
+        }
+        long key = board.hash();
+        long entry = probe(key);
+        int hashMove = TranspositionTable.move(entry);
+        if (entry != 0 && !saveMove
+            && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                return score;
+            case TranspositionTable.LOWER:
+                if (score >= beta) {
+                    return score;
                 }
-                if (saveMove) {
-                    _lastFoundMove = result;
+                break;
+            default:
+                if (score <= alpha) {
+                    return score;
                 }
-                return minEval;
-            }
-        }
-        return 0;
-    }
-
-    /** Return a heuristically determined maximum search depth
-     *  based on characteristics of BOARD.
-     private int maxDepth(Board board) {
-     long start = System.currentTimeMillis();
-     int sense, depth;
-     depth = 1;
-     if (_myPiece.equals(WHITE)) {
-     sense = 1;
-     } else {
-     sense = -1;
-     }
-     findMove(board, 1, false, sense, -INFTY, INFTY);
-     long end = System.currentTimeMillis();
-     long timeUsed = end - start;
-     for (long i = timeUsed; i <= 100000; i *= 2) {
-     depth += 1;
-     }
-     return depth;
-     } */
+                break;
+            }
+        }
+        boolean steps = !board.spearPending();
+        int alpha0 = alpha;
+        MoveList moves = moveList(depth);
+        moves.clear();
+        if (steps) {
+            board.generateQueenMoves(board.turn(), moves);
+        } else {
+            board.generateSpears(moves);
+        }
+        int ply = _rootDepth - depth;
+        boolean root = saveMove && steps;
+        int ordered = orderMoves(moves, hashMove, ply, root, steps);
+        int result = Move.NONE, found = Move.NONE;
+        int best = -INFTY;
+        int n = moves.size();
+        for (int i = 0; i < n; i += 1) {
+            if (i - ordered >= 0 && i - ordered < PICKS) {
+                moves.pickBest(i);
+            } else if (i - ordered == PICKS) {
+                moves.sortByScore(i);
+            }
+            int move = moves.get(root && i > 0
+                                 ? 1 + (i - 1 + _rootOffset) % (n - 1) : i);
+            int eval;
+            boolean scout = i > 0 && depth >= MIN_SCOUT_DEPTH;
+            if (steps) {
+                board.moveQueen(Move.packedFrom(move), Move.packedTo(move));
+                _lastFoundMove = Move.NONE;
+                eval = findSplitMove(board, depth - 1, root, sense, alpha,
+                                     scout ? alpha + 1 : beta);
+                if (scout && eval > alpha && eval < beta) {
+                    _lastFoundMove = Move.NONE;
+                    eval = findSplitMove(board, depth - 1, root, sense,
+                                         alpha, beta);
+                }
+                board.undoQueen();
+            } else {
+                board.throwSpear(Move.packedSpear(move));
+                eval = -findSplitMove(board, depth - 1, false, -sense,
+                                      scout ? -alpha - 1 : -beta, -alpha);
+                if (scout && eval > alpha && eval < beta) {
+                    eval = -findSplitMove(board, depth - 1, false, -sense,
+                                          -beta, -alpha);
+                }
+                board.undoSpear();
+            }
+            if (ifStop) {
+                break;
+            }
+            if ((eval > best || result == Move.NONE)
+                && (!root || _lastFoundMove != Move.NONE)) {
+                best = eval;
+                result = move;
+                found = root ? _lastFoundMove : move;
+            }
+            alpha = max(alpha, eval);
+            if (alpha >= beta) {
+                recordCutoff(move, depth, ply, steps, i == 0);
+                break;
+            }
+        }
+        if (saveMove) {
+            _lastFoundMove = found;
+            _lastFoundSafe = !ifStop || best > alpha0;
+        }
+        if (!ifStop) {
+            int bound = best <= alpha0 ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+            _table.store(key, depth, bound, best, result);
+        }
+        return best;
+    }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        Instant then = Instant.now();
-        if (FOREVER.compareTo(Duration.between(now, then)) <= 0) {
+    /** Begin putting MOVES in the order in which to search them at ply
+     *  PLY: HASHMOVE (if present) first, then the killer moves for PLY,
+     *  then the rest in decreasing order of history score.  Moves the
+     *  first two groups into place and scores the rest, sorting them too
+     *  iff SORT.  Otherwise, the caller is to pick the rest in order
+     *  lazily, since a cutoff usually comes early.  If STEPS, MOVES are
+     *  queen steps only (see findSplitMove), scored without their spear
+     *  squares.  Return the number of moves in the first two groups. */
+    private int orderMoves(MoveList moves, int hashMove, int ply,
+                           boolean sort, boolean steps) {
+        int next;
+        next = 0;
+        if (moves.promote(hashMove, next)) {
+            next += 1;
+        }
+        for (int killer : _killers[ply]) {
+            if (killer != hashMove && moves.promote(killer, next)) {
+                next += 1;
+            }
+        }
+        for (int k = next; k < moves.size(); k += 1) {
+            int move = moves.get(k);
+            int to = Move.packedTo(move);
+            int score = _history[Move.packedFrom(move) * SQUARES + to];
+            if (!steps) {
+                score += _spearHistory[to * SQUARES + Move.packedSpear(move)];
+            }
+            moves.setScore(k, score);
+        }
+        if (sort) {
+            moves.sortByScore(next);
+            return moves.size();
+        }
+        return next;
+    }
+
+    /** Record that packed MOVE, which was the first move searched iff
+     *  FIRST, caused a cutoff at ply PLY in a search of DEPTH levels,
+     *  counting it, making it a killer for PLY and crediting its queen
+     *  step and (unless MOVE is a queen step only, as indicated by STEPS)
+     *  its spear throw in the history tables. */
+    private void recordCutoff(int move, int depth, int ply, boolean steps,
+                              boolean first) {
+        _cutoffs += 1;
+        if (first) {
+            _firstCutoffs += 1;
+        }
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        int to = Move.packedTo(move);
+        _history[Move.packedFrom(move) * SQUARES + to] += depth * depth;
+        if (!steps) {
+            _spearHistory[to * SQUARES + Move.packedSpear(move)] +=
+                depth * depth;
+        }
+    }
+
+    /** Halve the history scores and clear the killers, so that a new
+     *  search is guided by, but not dominated by, earlier ones. */
+    private void ageHistory() {
+        for (int k = 0; k < _history.length; k += 1) {
+            _history[k] /= 2;
+            _spearHistory[k] /= 2;
+        }
+        for (int[] killers : _killers) {
+            killers[0] = killers[1] = Move.NONE;
+        }
+        if (_helpers != null) {
+            for (AI helper : _helpers) {
+                helper.ageHistory();
+            }
+        }
+    }
+
+    /** Count a node visited and return true iff my search is to stop.
+     *  Checks _stopRequested only every POLL_INTERVAL nodes, and
+     *  _nodeLimit at every node, so that node-limited searches stop at
+     *  the same node every time.  Nodes visited once the search is
+     *  stopping return at once, and are not counted. */
+    private boolean countNode() {
+        if (ifStop) {
+            return true;
+        }
+        _nodes += 1;
+        if ((_nodes & (POLL_INTERVAL - 1)) == 0 && _stopRequested
+            || _nodes == _nodeLimit) {
             ifStop = true;
-            return -1;
         }
+        return ifStop;
+    }
+
+    /** Return the MoveList used by findMove at search depth DEPTH. */
+    private MoveList moveList(int depth) {
+        if (depth >= _moveLists.length) {
+            _moveLists = Arrays.copyOf(_moveLists, 2 * depth);
+        }
+        if (_moveLists[depth] == null) {
+            _moveLists[depth] = new MoveList();
+        }
+        return _moveLists[depth];
+    }
+
+    /** Opening book consulted before searching, or null. */
+    private Book _book;
+
+    /** Tablebase of single-owner regions, or null. */
+    private Tablebase _tablebase;
+
+    /** Solver for separated positions, used in place of searching once
+     *  it can solve them. */
+    private final Endgame _endgame = new Endgame();
+
+    /** Evaluator for staticScore. */
+    private final Evaluator _evaluator = new Evaluator();
+
+    /** Move buffers for each search depth, allocated as needed. */
+    private MoveList[] _moveLists = new MoveList[1];
+
+    /** Number of squares on the board. */
+    private static final int SQUARES = Bitboard.SQUARES;
+
+    /** Ratio of the hard to the soft time limit for a move. */
+    private static final int HARD_LIMIT_FACTOR = 2;
+
+    /** Number of iterations in a row that must find the same move for
+     *  the search to stop at half the soft limit. */
+    private static final int STABLE_ITERATIONS = 3;
+
+    /** Number of nodes between checks for a stop request (a power of
+     *  two). */
+    private static final int POLL_INTERVAL = 256;
+
+    /** Half-width of the first aspiration window tried around the value
+     *  of the previous iteration, and the factor by which it widens each
+     *  time the value falls outside it. */
+    static final int ASPIRATION_WINDOW = 40, ASPIRATION_GROWTH = 4;
+
+    /** Least depth at which moves after the first are searched with a
+     *  null window. */
+    private static final int MIN_SCOUT_DEPTH = 3;
+
+    /** Number of moves findMove selects one at a time, by history score,
+     *  before sorting the rest. */
+    private static final int PICKS = 6;
+
+    /** Depth of the current iteration, so that findMove can tell its
+     *  distance from the root. */
+    private int _rootDepth;
+
+    /** Two killer moves for each ply (or half-ply): recent moves that
+     *  caused cutoffs. */
+    private final int[][] _killers = new int[2 * MAX_DEPTH + 1][2];
+
+    /** History scores of queen steps, indexed by FROM * SQUARES + TO. */
+    private final int[] _history = new int[SQUARES * SQUARES];
+
+    /** History scores of spear throws, indexed by TO * SQUARES + SPEAR,
+     *  where TO is the square the queen threw from. */
+    private final int[] _spearHistory = new int[SQUARES * SQUARES];
+
+    /** Size of my transposition table, in megabytes. */
+    private int _hashSize = DEFAULT_HASH_SIZE;
 
+    /** Transposition table, created on my first search and kept for the
+     *  rest of the game.  Shared with my helpers. */
+    private TranspositionTable _table;
+
+    /** True iff I search in split-ply mode. */
+    private boolean _splitPly;
+
+    /** True iff I search on my opponent's time. */
+    private boolean _ponder;
+
+    /** My search of my opponent's position, while it runs, or null. */
+    private Future<?> _pondering;
+
+    /** True iff I pondered since my last search. */
+    private boolean _pondered;
+
+    /** Number of threads to search with. */
+    private int _threads = 1;
+
+    /** AIs that search alongside me on other threads, or null if they
+     *  have not been created yet. */
+    private AI[] _helpers;
+
+    /** Rotation applied to the order in which root moves after the first
+     *  are searched: 0 for the main AI, and different for each helper. */
+    private int _rootOffset;
+
+    /** Value of System.nanoTime() when my current search started. */
+    private long _searchStart;
+
+    /** Elapsed time in nanoseconds after which my current search starts
+     *  no new iteration.  Helpers never stop on their own account. */
+    private long _softLimit = Long.MAX_VALUE;
+
+    /** Deepest iteration of the current search (see searchFixed), or 0
+     *  for no limit. */
+    private int _depthLimit;
+    /** Most nodes of the current search (see searchFixed), or 0 for no
+     *  limit. */
+    private long _nodeLimit;
+
+    /** Nodes visited by the current or last call to iterate. */
+    private long _nodes;
+
+    /** Counts for the current or last call to iterate: transposition
+     *  table probes, and those that found an entry; beta cutoffs, and
+     *  those made by the first move searched. */
+    private long _probes, _hashHits, _cutoffs, _firstCutoffs;
+
+    /** Statistics of the current or last call to iterate. */
+    private SearchStats _stats = new SearchStats();
+
+    /** Statistics of my last search, or null if I have not searched. */
+    private SearchStats _lastStats;
+
+    /** Depth of the deepest iteration completed by the current or last
+     *  call to iterate. */
+    private int _completedDepth;
+    /** Value, for the side to move, found by that iteration. */
+    private int _completedScore;
+
+    /** Move returned by a helper's last call to iterate. */
+    private int _bestMove;
+
+    /** Statistics for my last search over all threads: depth completed,
+     *  nodes visited and elapsed time. */
+    private int _lastDepth;
+    /** See _lastDepth. */
+    private long _lastNodes, _lastNanos;
+    /** "book" or "endgame" if my last move came from the book or the
+     *  endgame solver, in which case _lastDepth is meaningless, and
+     *  otherwise null. */
+    private String _lastShortcut;
+
+    /** Units for searchSummary. */
+    private static final long NANOS_PER_MICRO = 1000, MICROS_PER_MILLI = 1000;
+
+    /** Threads on which helper searches run, shared by all AIs (and
+     *  other automated players).  Idle threads are daemons and expire,
+     *  so abandoned AIs leave nothing behind. */
+    static final ExecutorService HELPER_POOL =
+        Executors.newCachedThreadPool(daemons("amazons-search"));
+
+    /** Thread that stops searches at their deadlines, shared by all
+     *  AIs. */
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(daemons("amazons-timer"));
+
+    /** Return a factory for daemon threads named NAME. */
+    private static ThreadFactory daemons(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** Return a heuristic value for BOARD. */
+    private int staticScore(Board board) {
         Piece winner = board.winner();
-        int whiteScore = WINNING_VALUE;
         if (winner == BLACK) {
             exhausted = true;
             return -WINNING_VALUE;
@@ -180,12 +1101,6 @@ class AI extends Player {
             return WINNING_VALUE;
         }
 
-        Iterator<Move> blackMove = board.legalMoves(BLACK);
-        while (blackMove.hasNext()) {
-            blackMove.next();
-            whiteScore -= 1;
-        }
-
-        return whiteScore;
+        return _evaluator.score(board);
     }
 }
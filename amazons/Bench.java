@@ -0,0 +1,120 @@
+package amazons;
+
+import java.io.PrintStream;
+
+/** The "bench" benchmark of AI search: searches of a built-in list of
+ *  positions, each limited to a fixed depth or a fixed number of nodes
+ *  rather than by time (see AI.searchDepth and AI.searchNodes).  Such
+ *  searches visit the same nodes on every run, so that the total number
+ *  of nodes in depth-limited searches is a signature of the search's
+ *  behavior: a change to the program that leaves it unchanged has
+ *  changed only the speed of the search, which is reported as well.
+ *  (Node-limited searches all visit their limit, unless they finish
+ *  early, so for them only the moves and depths reported show changes
+ *  in behavior.)  The positions are the initial
+ *  one and those reached after every INTERVAL moves of GAME, a game
+ *  played by the AI against itself.
+ *  @author Ruochen Liu
+ */
+final class Bench {
+
+    /** A benchmark of the searches of AI, each to DEFAULT_DEPTH
+     *  moves. */
+    Bench(AI ai) {
+        _ai = ai;
+        _depth = DEFAULT_DEPTH;
+    }
+
+    /** Limit each search to NODES nodes, rather than to a depth. */
+    void setNodes(long nodes) {
+        if (nodes <= 0) {
+            throw Utils.error("node limit must be positive");
+        }
+        _nodes = nodes;
+        _depth = 0;
+    }
+
+    /** Limit each search to DEPTH moves (half-plies in split-ply mode),
+     *  rather than to a number of nodes. */
+    void setDepth(int depth) {
+        if (depth <= 0) {
+            throw Utils.error("search depth must be positive");
+        }
+        _depth = depth;
+        _nodes = 0;
+    }
+
+    /** Return the number of positions searched. */
+    static int positions() {
+        return GAME.length / INTERVAL + 1;
+    }
+
+    /** Return a new Board holding position K, where 0 <= K <
+     *  positions(). */
+    static Board position(int k) {
+        Board result = new Board();
+        for (int ply = 0; ply < k * INTERVAL; ply += 1) {
+            result.makeMove(Move.mv(GAME[ply]));
+        }
+        return result;
+    }
+
+    /** Search each of my positions, reporting each search and then the
+     *  total number of nodes and the rate on OUT.  Return the total
+     *  number of nodes. */
+    long run(PrintStream out) {
+        long nodes, nanos;
+        nodes = nanos = 0;
+        for (int k = 0; k < positions(); k += 1) {
+            Board board = position(k);
+            long start = System.nanoTime();
+            int move = _depth > 0 ? _ai.searchDepth(board, _depth)
+                : _ai.searchNodes(board, _nodes);
+            nanos += System.nanoTime() - start;
+            nodes += _ai.lastNodes();
+            out.printf("Position %d: %s, depth %d, %d nodes%n", k + 1,
+                       Move.mv(move), _ai.lastDepth(), _ai.lastNodes());
+        }
+        out.printf("Nodes: %d%n", nodes);
+        out.printf("Time: %d ms%n", nanos / NANOS_PER_MILLI);
+        out.printf("Nodes/second: %.0f%n",
+                   (double) nodes * NANOS_PER_SECOND / Math.max(1, nanos));
+        return nodes;
+    }
+
+    /** Default depth of each search, in moves. */
+    static final int DEFAULT_DEPTH = 2;
+
+    /** Number of moves of GAME between the positions searched. */
+    private static final int INTERVAL = 8;
+
+    /** The moves of the game from which the positions are taken. */
+    private static final String[] GAME = {
+        "g1-g8(e10)", "d10-d3(d8)", "a4-c6(d7)", "j7-h5(g4)", "j4-i3(e3)",
+        "g10-g9(b4)", "d1-c2(c4)", "a7-b7(a6)", "i3-i4(h4)", "d3-f1(a1)",
+        "g8-g7(g5)", "h5-g6(i8)", "c2-f2(f9)", "b7-c7(h2)", "f2-c2(d1)",
+        "c7-b8(g3)", "g7-h8(h5)", "b8-c7(b7)", "c6-f6(f3)", "c7-e5(e6)",
+        "f6-f8(e8)", "e5-d6(d2)", "f8-d10(h6)", "g6-h7(d3)", "d10-c9(c5)",
+        "d6-b8(c8)", "h8-e5(f4)", "g9-g7(d10)", "i4-i7(j7)", "g7-h8(g8)",
+        "i7-i2(h3)", "h7-i7(i3)", "i2-j3(h1)", "i7-i4(j4)", "e5-g7(i7)",
+        "b8-d6(f8)", "c9-a9(c7)", "d6-e5(b2)", "g7-h7(j5)", "i4-i6(i4)",
+        "a9-e9(f10)", "e5-e4(g6)", "h7-e7(g7)", "e4-d5(d6)", "e7-f6(d4)",
+        "d5-c6(a4)", "f6-e5(e4)", "c6-b6(b5)", "e9-a9(a7)", "b6-c6(d5)",
+        "j3-j1(i1)", "c6-b6(a5)", "e5-f6(e5)", "h8-h10(j8)", "c2-c3(c1)",
+        "f1-f2(e1)", "c3-c2(b1)", "f2-g2(f1)", "c2-b3(a2)", "h10-g9(j9)",
+        "j1-i2(j1)", "g9-h10(g9)", "a9-b9(a8)", "g2-f2(g1)"
+    };
+
+    /** Nanoseconds in a millisecond, and in a second. */
+    private static final long NANOS_PER_MILLI = 1000000L,
+        NANOS_PER_SECOND = 1000000000L;
+
+    /** The AI whose searches are measured. */
+    private final AI _ai;
+
+    /** Most nodes in each search, or 0 if searches are limited by
+     *  depth. */
+    private long _nodes;
+    /** Depth of each search, or 0 if searches are limited by nodes. */
+    private int _depth;
+}
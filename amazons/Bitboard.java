@@ -0,0 +1,258 @@
+package amazons;
+
+import static amazons.Board.SIZE;
+
+/** Static utilities for 100-bit sets of Squares ("bitboards").  A set is
+ *  held in two longs: square k is bit k of the low word if k < 64, and
+ *  bit k - 64 of the high word otherwise.  Only the low 36 bits of the
+ *  high word are ever used.  Directions are numbered as for
+ *  Square.queenMove: 0 for north, 1 for northeast, and so on clockwise
+ *  to 7 for northwest.
+ *  @author Ruochen Liu
+ */
+final class Bitboard {
+
+    /** Number of squares on the board. */
+    static final int SQUARES = SIZE * SIZE;
+
+    /** Number of squares held in the low word. */
+    static final int LO_BITS = Long.SIZE;
+
+    /** Mask of the bits of the high word that denote squares. */
+    static final long HI_MASK = (1L << (SQUARES - LO_BITS)) - 1;
+
+    /** Return the low word of the set containing only square index SQ. */
+    static long loBit(int sq) {
+        return sq < LO_BITS ? 1L << sq : 0L;
+    }
+
+    /** Return the high word of the set containing only square index SQ. */
+    static long hiBit(int sq) {
+        return sq < LO_BITS ? 0L : 1L << (sq - LO_BITS);
+    }
+
+    /** Return true iff the set LO, HI contains square index SQ. */
+    static boolean contains(long lo, long hi, int sq) {
+        if (sq < LO_BITS) {
+            return (lo & (1L << sq)) != 0;
+        }
+        return (hi & (1L << (sq - LO_BITS))) != 0;
+    }
+
+    /** Return the number of squares in the set LO, HI. */
+    static int count(long lo, long hi) {
+        return Long.bitCount(lo) + Long.bitCount(hi);
+    }
+
+    /** Return the index of the lowest-numbered square in the set LO, HI,
+     *  or -1 if the set is empty. */
+    static int first(long lo, long hi) {
+        if (lo != 0) {
+            return Long.numberOfTrailingZeros(lo);
+        } else if (hi != 0) {
+            return LO_BITS + Long.numberOfTrailingZeros(hi);
+        }
+        return -1;
+    }
+
+    /** Return the lowest-numbered square index after SQ in the set LO,
+     *  HI, or -1 if there is none. */
+    static int next(int sq, long lo, long hi) {
+        sq += 1;
+        if (sq < LO_BITS) {
+            return first(lo & (-1L << sq), hi);
+        }
+        return first(0, hi & (-1L << (sq - LO_BITS)));
+    }
+
+    /** Return the index of the square of rank K (counting from 0, in
+     *  increasing order of index) in the set LO, HI, which must have more
+     *  than K members. */
+    static int nth(long lo, long hi, int k) {
+        int low = Long.bitCount(lo);
+        if (k >= low) {
+            return LO_BITS + nth(hi, k - low);
+        }
+        return nth(lo, k);
+    }
+
+    /** Return the position of the bit of rank K (counting from 0) in
+     *  WORD, which must have more than K bits set. */
+    private static int nth(long word, int k) {
+        for (; k > 0; k -= 1) {
+            word &= word - 1;
+        }
+        return Long.numberOfTrailingZeros(word);
+    }
+
+    /** Return the low word of the set LO, HI with every square moved one
+     *  step in direction DIR.  Squares that would leave the board are
+     *  dropped. */
+    static long shiftLo(long lo, long hi, int dir) {
+        lo &= SOURCE_LO[dir];
+        hi &= SOURCE_HI[dir];
+        int k = OFFSET[dir];
+        if (k > 0) {
+            return lo << k;
+        }
+        return (lo >>> -k) | (hi << (LO_BITS + k));
+    }
+
+    /** Return the high word of the set LO, HI with every square moved one
+     *  step in direction DIR.  Squares that would leave the board are
+     *  dropped. */
+    static long shiftHi(long lo, long hi, int dir) {
+        lo &= SOURCE_LO[dir];
+        hi &= SOURCE_HI[dir];
+        int k = OFFSET[dir];
+        if (k > 0) {
+            return ((hi << k) | (lo >>> (LO_BITS - k))) & HI_MASK;
+        }
+        return hi >>> -k;
+    }
+
+    /** Return the low word of the squares strictly after FROM, up to and
+     *  including TO, on the queen move FROM-TO (square indices), or 0 if
+     *  there is no such move. */
+    static long rayLo(int from, int to) {
+        return RAY_LO[from * SQUARES + to];
+    }
+
+    /** Return the high word of the squares strictly after FROM, up to and
+     *  including TO, on the queen move FROM-TO (square indices), or 0 if
+     *  there is no such move. */
+    static long rayHi(int from, int to) {
+        return RAY_HI[from * SQUARES + to];
+    }
+
+    /** Return the low word of the squares adjacent (by a king step) to
+     *  square index SQ. */
+    static long neighboursLo(int sq) {
+        return NEIGHBOURS_LO[sq];
+    }
+
+    /** Return the high word of the squares adjacent (by a king step) to
+     *  square index SQ. */
+    static long neighboursHi(int sq) {
+        return NEIGHBOURS_HI[sq];
+    }
+
+    /** Return the indices of the squares adjacent (by a king step) to
+     *  square index SQ.  The caller must not modify the result. */
+    static int[] adjacent(int sq) {
+        return ADJACENT[sq];
+    }
+
+    /** Return the set of directions (bit DIR for direction DIR) in which
+     *  the square one step from square index SQ is in the set LO, HI. */
+    static int ring(int sq, long lo, long hi) {
+        int result;
+        result = 0;
+        for (int dir = 0; dir < OFFSET.length; dir += 1) {
+            int next = RING[sq * OFFSET.length + dir];
+            if (next >= 0 && contains(lo, hi, next)) {
+                result |= 1 << dir;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff the squares one step in each of the directions in
+     *  DIRS (as returned by ring) from any square are connected to each
+     *  other by king steps among themselves.  If so, removing the center
+     *  square from a connected set cannot disconnect it. */
+    static boolean ringConnected(int dirs) {
+        return RING_CONNECTED[dirs];
+    }
+
+    /** Change in square index for one step in each direction. */
+    private static final int[] OFFSET = {
+        SIZE, SIZE + 1, 1, 1 - SIZE, -SIZE, -SIZE - 1, -1, SIZE - 1
+    };
+
+    /** For each direction, the squares that may take a step in that
+     *  direction without leaving the board (low and high words). */
+    private static final long[] SOURCE_LO = new long[OFFSET.length],
+        SOURCE_HI = new long[OFFSET.length];
+
+    /** Squares along each queen move, indexed by FROM * SQUARES + TO. */
+    private static final long[] RAY_LO = new long[SQUARES * SQUARES],
+        RAY_HI = new long[SQUARES * SQUARES];
+
+    /** King-step neighbourhood of each square. */
+    private static final long[] NEIGHBOURS_LO = new long[SQUARES],
+        NEIGHBOURS_HI = new long[SQUARES];
+
+    /** ADJACENT[sq] lists the king-step neighbours of sq. */
+    private static final int[][] ADJACENT = new int[SQUARES][];
+
+    /** RING[sq * 8 + dir] is the square one step from sq in direction
+     *  dir, or -1 if that is off the board. */
+    private static final int[] RING = new int[SQUARES * OFFSET.length];
+
+    /** Column and row changes for one step in each direction. */
+    private static final int[] DCOL = { 0, 1, 1, 1, 0, -1, -1, -1 },
+        DROW = { 1, 1, 0, -1, -1, -1, 0, 1 };
+
+    /** Values of ringConnected, indexed by set of directions. */
+    private static final boolean[] RING_CONNECTED =
+        new boolean[1 << OFFSET.length];
+
+    static {
+        for (int from = 0; from < SQUARES; from += 1) {
+            Square start = Square.sq(from);
+            for (int dir = 0; dir < OFFSET.length; dir += 1) {
+                long lo, hi;
+                lo = hi = 0;
+                Square next = start.queenMove(dir, 1);
+                RING[from * OFFSET.length + dir] =
+                    next == null ? -1 : next.index();
+                if (next != null) {
+                    SOURCE_LO[dir] |= loBit(from);
+                    SOURCE_HI[dir] |= hiBit(from);
+                    NEIGHBOURS_LO[from] |= loBit(next.index());
+                    NEIGHBOURS_HI[from] |= hiBit(next.index());
+                }
+                for (int steps = 1; next != null; steps += 1) {
+                    lo |= loBit(next.index());
+                    hi |= hiBit(next.index());
+                    RAY_LO[from * SQUARES + next.index()] = lo;
+                    RAY_HI[from * SQUARES + next.index()] = hi;
+                    next = start.queenMove(dir, steps + 1);
+                }
+            }
+            ADJACENT[from] = new int[count(NEIGHBOURS_LO[from],
+                                           NEIGHBOURS_HI[from])];
+            int k;
+            k = 0;
+            for (int sq = 0; sq < SQUARES; sq += 1) {
+                if (contains(NEIGHBOURS_LO[from], NEIGHBOURS_HI[from], sq)) {
+                    ADJACENT[from][k] = sq;
+                    k += 1;
+                }
+            }
+        }
+        for (int dirs = 0; dirs < RING_CONNECTED.length; dirs += 1) {
+            int reached = dirs & -dirs;
+            for (int added = reached; added != 0; ) {
+                added = 0;
+                for (int d = 0; d < OFFSET.length; d += 1) {
+                    for (int e = 0; e < OFFSET.length; e += 1) {
+                        if ((reached & (1 << d)) != 0
+                            && (dirs & ~reached & (1 << e)) != 0
+                            && Math.abs(DCOL[d] - DCOL[e]) <= 1
+                            && Math.abs(DROW[d] - DROW[e]) <= 1) {
+                            added |= 1 << e;
+                        }
+                    }
+                }
+                reached |= added;
+            }
+            RING_CONNECTED[dirs] = reached == dirs;
+        }
+    }
+
+    /** Not instantiable. */
+    private Bitboard() {
+    }
+}
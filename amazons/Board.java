@@ -1,16 +1,13 @@
 package amazons;
 
 
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.Collections;
 
 import static amazons.Piece.BLACK;
 import static amazons.Piece.WHITE;
 import static amazons.Piece.EMPTY;
 import static amazons.Piece.SPEAR;
-import static amazons.Move.mv;
 import static amazons.Utils.*;
 
 
@@ -35,38 +32,61 @@ class Board {
 
     /** Copies MODEL into me. */
     void copy(Board model) {
-        _allPieces = new Piece[SIZE][SIZE];
-        for (int i = 0; i < model._allPieces.length; i++) {
-            for (int j = 0; j < model._allPieces.length; j++) {
-                _allPieces[i][j] = model._allPieces[i][j];
-            }
+        System.arraycopy(model._lo, 0, _lo, 0, _lo.length);
+        System.arraycopy(model._hi, 0, _hi, 0, _hi.length);
+        for (int f = 0; f < Lines.FAMILIES; f += 1) {
+            System.arraycopy(model._lineOcc[f], 0, _lineOcc[f], 0,
+                             _lineOcc[f].length);
         }
+        System.arraycopy(model._emptyNeighbours, 0, _emptyNeighbours, 0,
+                         _emptyNeighbours.length);
+        System.arraycopy(model._mobile, 0, _mobile, 0, _mobile.length);
+        System.arraycopy(model._regionOf, 0, _regionOf, 0, _regionOf.length);
+        System.arraycopy(model._regionLo, 0, _regionLo, 0, _regionLo.length);
+        System.arraycopy(model._regionHi, 0, _regionHi, 0, _regionHi.length);
+        _regionCount = model._regionCount;
+        this._pendingFrom = model._pendingFrom;
+        this._pendingTo = model._pendingTo;
+        this._hash = model._hash;
         this._winner = model._winner;
         this._turn = model.turn();
-        _allMove = new ArrayList<>();
+        _numMoves = 0;
     }
 
     /** Clears the board to the initial position. */
     void init() {
-        _allPieces = new Piece[SIZE][SIZE];
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                _allPieces[i][j] = EMPTY;
+        for (int i = 0; i < _lo.length; i++) {
+            _lo[i] = _hi[i] = 0;
+        }
+        _hash = 0;
+        _pendingFrom = _pendingTo = -1;
+        for (int sq = 0; sq < _emptyNeighbours.length; sq += 1) {
+            _emptyNeighbours[sq] = Bitboard.adjacent(sq).length;
+        }
+        _mobile[WHITE.ordinal()] = _mobile[BLACK.ordinal()] = 0;
+        for (int sq = 0; sq < _regionOf.length; sq += 1) {
+            _regionOf[sq] = 0;
+        }
+        _regionLo[0] = ~0L;
+        _regionHi[0] = Bitboard.HI_MASK;
+        _regionCount = 1;
+        for (int f = 0; f < Lines.FAMILIES; f += 1) {
+            for (int l = 0; l < _lineOcc[f].length; l += 1) {
+                _lineOcc[f][l] = Lines.emptyLine(f, l);
             }
         }
-        _allPieces[0][3] = WHITE;
-        _allPieces[3][0] = WHITE;
-        _allPieces[6][0] = WHITE;
-        _allPieces[9][3] = WHITE;
-        _allPieces[0][6] = BLACK;
-        _allPieces[3][9] = BLACK;
-        _allPieces[6][9] = BLACK;
-        _allPieces[9][6] = BLACK;
+        put(WHITE, 0, 3);
+        put(WHITE, 3, 0);
+        put(WHITE, 6, 0);
+        put(WHITE, 9, 3);
+        put(BLACK, 0, 6);
+        put(BLACK, 3, 9);
+        put(BLACK, 6, 9);
+        put(BLACK, 9, 6);
 
         _turn = WHITE;
         _winner = EMPTY;
-        _allMove = new ArrayList<>();
-
+        _numMoves = 0;
     }
 
     /** Return the Piece whose move it is (WHITE or BLACK). */
@@ -74,22 +94,46 @@ class Board {
         return _turn;
     }
 
+    /** Return the Zobrist hash (see Zobrist) of the current position,
+     *  which depends only on the contents of the squares, on whose turn
+     *  it is, and on whether a spear throw is pending (see moveQueen):
+     *  while one is, Zobrist.PENDING is XORed in, so that a half-made
+     *  move never shares a hash with a complete position, as the
+     *  transposition table and AI.expectedMove require. */
+    long hash() {
+        return _hash;
+    }
+
     /** Return the number of moves (that have not been undone) for this
      *  board. */
     int numMoves() {
-        return _allMove.size();
+        return _numMoves;
+    }
+
+    /** Return the K-th move made on this board (numbering from 0), packed
+     *  as by Move.pack.  Requires 0 <= K < numMoves(). */
+    int moveAt(int k) {
+        assert 0 <= k && k < _numMoves;
+        return _history[k];
     }
 
     /** Return the winner in the current position, or null if the game is
      *  not yet finished. */
     Piece winner() {
-        Iterator me = legalMoves();
-        if (!me.hasNext()) {
+        if (!hasMove(turn())) {
             return turn().opponent();
         }
         return null;
     }
 
+    /** Return true iff SIDE has at least one legal move.  A queen has a
+     *  legal move exactly when some adjacent square is empty, since it
+     *  may throw its spear back to the square it left, so this just
+     *  consults the count of such queens kept by putAt. */
+    boolean hasMove(Piece side) {
+        return _mobile[side.ordinal()] > 0;
+    }
+
     /** Return the contents the square at S. */
     final Piece get(Square s) {
 
@@ -99,8 +143,20 @@ class Board {
     /** Return the contents of the square at (COL, ROW), where
      *  0 <= COL, ROW <= 9. */
     final Piece get(int col, int row) {
+        assert Square.exists(col, row);
+        return pieceAt(row * SIZE + col);
+    }
 
-        return _allPieces[col][row];
+    /** Return the contents of the square with index INDEX. */
+    final Piece pieceAt(int index) {
+        long lo = Bitboard.loBit(index), hi = Bitboard.hiBit(index);
+        for (Piece p : OCCUPANTS) {
+            int k = p.ordinal();
+            if (((_lo[k] & lo) | (_hi[k] & hi)) != 0) {
+                return p;
+            }
+        }
+        return EMPTY;
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -115,8 +171,206 @@ class Board {
 
     /** Set square (COL, ROW) to P. */
     final void put(Piece p, int col, int row) {
-        _allPieces[col][row] = p;
+        assert Square.exists(col, row);
+        putAt(p, row * SIZE + col);
+    }
+
+    /** Set the square with index INDEX to P. */
+    final void putAt(Piece p, int index) {
+        long lo = Bitboard.loBit(index), hi = Bitboard.hiBit(index);
+        Piece old = pieceAt(index);
+        if (old != EMPTY) {
+            _hash ^= Zobrist.key(old, index);
+        }
+        if (p != EMPTY) {
+            _hash ^= Zobrist.key(p, index);
+        }
+        if (isQueen(old) && _emptyNeighbours[index] > 0) {
+            _mobile[old.ordinal()] -= 1;
+        }
+        if ((old == EMPTY) != (p == EMPTY)) {
+            for (int f = 0; f < Lines.FAMILIES; f += 1) {
+                _lineOcc[f][Lines.line(f, index)] ^=
+                    1 << Lines.pos(f, index);
+            }
+            adjustNeighbours(index, p == EMPTY ? 1 : -1);
+        }
+        if (old == SPEAR && p != SPEAR) {
+            joinRegion(index);
+        } else if (old != SPEAR && p == SPEAR) {
+            leaveRegion(index);
+        }
+        if (isQueen(p) && _emptyNeighbours[index] > 0) {
+            _mobile[p.ordinal()] += 1;
+        }
+        for (Piece q : OCCUPANTS) {
+            _lo[q.ordinal()] &= ~lo;
+            _hi[q.ordinal()] &= ~hi;
+        }
+        if (p != EMPTY) {
+            _lo[p.ordinal()] |= lo;
+            _hi[p.ordinal()] |= hi;
+        }
+    }
+
+    /** Add DELTA to the empty-neighbour counts of the squares adjacent to
+     *  square index SQ, whose occupancy has just changed, keeping the
+     *  counts of mobile queens up to date. */
+    private void adjustNeighbours(int sq, int delta) {
+        for (int n : Bitboard.adjacent(sq)) {
+            int before = _emptyNeighbours[n];
+            _emptyNeighbours[n] = before + delta;
+            if ((before == 0) != (before + delta == 0)) {
+                Piece q = pieceAt(n);
+                if (isQueen(q)) {
+                    _mobile[q.ordinal()] += delta;
+                }
+            }
+        }
+    }
+
+    /** Return the number of regions of the board: the sets of squares
+     *  not holding spears that are connected by king steps through such
+     *  squares.  Once no region holds queens of both sides, each side
+     *  can only move within its own regions.  Regions are kept up to date
+     *  as spears are placed and removed, by a flood fill of the affected
+     *  region when a spear might have split it. */
+    int regionCount() {
+        return _regionCount;
+    }
+
+    /** Return the low word of the bitboard of region K (numbering from 0
+     *  in no particular order), where 0 <= K < regionCount(). */
+    long regionLo(int k) {
+        return _regionLo[k];
+    }
 
+    /** Return the high word of the bitboard of region K, where
+     *  0 <= K < regionCount(). */
+    long regionHi(int k) {
+        return _regionHi[k];
+    }
+
+    /** Return the number of the region containing square index SQ, or -1
+     *  if it holds a spear. */
+    int regionIndex(int sq) {
+        return _regionOf[sq];
+    }
+
+    /** Add square index SQ, from which a spear has just been removed, to
+     *  the region of its neighbours, merging their regions if they are
+     *  different, or else to a new region. */
+    private void joinRegion(int sq) {
+        int target = -1;
+        for (int n : Bitboard.adjacent(sq)) {
+            int r = _regionOf[n];
+            if (r < 0 || r == target) {
+                continue;
+            } else if (target < 0) {
+                target = r;
+            } else {
+                _regionLo[target] |= _regionLo[r];
+                _regionHi[target] |= _regionHi[r];
+                relabel(_regionLo[r], _regionHi[r], target);
+                if (target == _regionCount - 1) {
+                    target = r;
+                }
+                removeRegion(r);
+            }
+        }
+        if (target < 0) {
+            target = _regionCount;
+            _regionCount += 1;
+            _regionLo[target] = _regionHi[target] = 0;
+        }
+        _regionOf[sq] = target;
+        _regionLo[target] |= Bitboard.loBit(sq);
+        _regionHi[target] |= Bitboard.hiBit(sq);
+    }
+
+    /** Remove square index SQ, on which a spear has just been placed,
+     *  from its region, splitting the region if that disconnects it. */
+    private void leaveRegion(int sq) {
+        int r = _regionOf[sq];
+        _regionOf[sq] = -1;
+        long lo = _regionLo[r] & ~Bitboard.loBit(sq),
+            hi = _regionHi[r] & ~Bitboard.hiBit(sq);
+        _regionLo[r] = lo;
+        _regionHi[r] = hi;
+        if ((lo | hi) == 0) {
+            removeRegion(r);
+            return;
+        }
+        if (Bitboard.ringConnected(Bitboard.ring(sq, lo, hi))) {
+            return;
+        }
+        connected(lo, hi);
+        if (_fillLo == lo && _fillHi == hi) {
+            return;
+        }
+        _regionLo[r] = _fillLo;
+        _regionHi[r] = _fillHi;
+        lo &= ~_fillLo;
+        hi &= ~_fillHi;
+        while ((lo | hi) != 0) {
+            connected(lo, hi);
+            int k = _regionCount;
+            _regionCount += 1;
+            _regionLo[k] = _fillLo;
+            _regionHi[k] = _fillHi;
+            relabel(_fillLo, _fillHi, k);
+            lo &= ~_fillLo;
+            hi &= ~_fillHi;
+        }
+    }
+
+    /** Set _fillLo and _fillHi to the squares of the set LO, HI connected
+     *  by king steps within the set to its lowest-numbered square. */
+    private void connected(long lo, long hi) {
+        int start = Bitboard.first(lo, hi);
+        long fillLo = Bitboard.loBit(start), fillHi = Bitboard.hiBit(start);
+        while (true) {
+            long nextLo = fillLo, nextHi = fillHi;
+            for (int dir = 0; dir < DIRECTIONS; dir += 1) {
+                nextLo |= Bitboard.shiftLo(fillLo, fillHi, dir);
+                nextHi |= Bitboard.shiftHi(fillLo, fillHi, dir);
+            }
+            nextLo &= lo;
+            nextHi &= hi;
+            if (nextLo == fillLo && nextHi == fillHi) {
+                break;
+            }
+            fillLo = nextLo;
+            fillHi = nextHi;
+        }
+        _fillLo = fillLo;
+        _fillHi = fillHi;
+    }
+
+    /** Record that the squares LO, HI belong to region K. */
+    private void relabel(long lo, long hi, int k) {
+        for (; lo != 0; lo &= lo - 1) {
+            _regionOf[Long.numberOfTrailingZeros(lo)] = k;
+        }
+        for (; hi != 0; hi &= hi - 1) {
+            _regionOf[Bitboard.LO_BITS + Long.numberOfTrailingZeros(hi)] = k;
+        }
+    }
+
+    /** Delete region K, whose squares now belong elsewhere, by moving the
+     *  last region into its place. */
+    private void removeRegion(int k) {
+        _regionCount -= 1;
+        if (k != _regionCount) {
+            _regionLo[k] = _regionLo[_regionCount];
+            _regionHi[k] = _regionHi[_regionCount];
+            relabel(_regionLo[k], _regionHi[k], k);
+        }
+    }
+
+    /** Return true iff P is WHITE or BLACK. */
+    private static boolean isQueen(Piece p) {
+        return p == WHITE || p == BLACK;
     }
 
     /** Set square COL ROW to P. */
@@ -124,6 +378,86 @@ class Board {
         put(p, col - 'a', row - '1');
     }
 
+    /** Return the low word of the bitboard (see Bitboard) of the squares
+     *  containing P.  For P == EMPTY, these are the unoccupied squares. */
+    final long bitsLo(Piece p) {
+        if (p == EMPTY) {
+            return ~occupiedLo();
+        }
+        return _lo[p.ordinal()];
+    }
+
+    /** Return the high word of the bitboard (see Bitboard) of the squares
+     *  containing P.  For P == EMPTY, these are the unoccupied squares. */
+    final long bitsHi(Piece p) {
+        if (p == EMPTY) {
+            return ~occupiedHi() & Bitboard.HI_MASK;
+        }
+        return _hi[p.ordinal()];
+    }
+
+    /** Return the low word of the bitboard of occupied squares. */
+    final long occupiedLo() {
+        return _lo[WHITE.ordinal()] | _lo[BLACK.ordinal()]
+            | _lo[SPEAR.ordinal()];
+    }
+
+    /** Return the high word of the bitboard of occupied squares. */
+    final long occupiedHi() {
+        return _hi[WHITE.ordinal()] | _hi[BLACK.ordinal()]
+            | _hi[SPEAR.ordinal()];
+    }
+
+    /** Return the low word of the bitboard of squares reachable by an
+     *  unblocked queen move from the square with index FROM, treating
+     *  the square with index ASEMPTY (if not -1) as empty. */
+    final long reachLo(int from, int asEmpty) {
+        long result;
+        result = 0;
+        for (int f = 0; f < Lines.FAMILIES; f += 1) {
+            result |= Lines.expandLo(f, Lines.line(f, from),
+                                     lineReach(f, from, asEmpty));
+        }
+        return result;
+    }
+
+    /** Return the high word of the bitboard of squares reachable by an
+     *  unblocked queen move from the square with index FROM, treating
+     *  the square with index ASEMPTY (if not -1) as empty. */
+    final long reachHi(int from, int asEmpty) {
+        long result;
+        result = 0;
+        for (int f = 0; f < Lines.FAMILIES; f += 1) {
+            result |= Lines.expandHi(f, Lines.line(f, from),
+                                     lineReach(f, from, asEmpty));
+        }
+        return result;
+    }
+
+    /** Return the number of squares reachable by an unblocked queen move
+     *  from the square with index FROM, treating the square with index
+     *  ASEMPTY (if not -1) as empty. */
+    final int reachCount(int from, int asEmpty) {
+        int result;
+        result = 0;
+        for (int f = 0; f < Lines.FAMILIES; f += 1) {
+            result += Integer.bitCount(lineReach(f, from, asEmpty));
+        }
+        return result;
+    }
+
+    /** Return the positions reachable from the square with index FROM
+     *  along its line of FAMILY (see Lines), treating the square with
+     *  index ASEMPTY (if not -1) as empty. */
+    private int lineReach(int family, int from, int asEmpty) {
+        int line = Lines.line(family, from);
+        int occ = _lineOcc[family][line];
+        if (asEmpty >= 0 && Lines.line(family, asEmpty) == line) {
+            occ &= ~(1 << Lines.pos(family, asEmpty));
+        }
+        return Lines.slide(Lines.pos(family, from), occ);
+    }
+
     /** Return true iff FROM - TO is an unblocked queen move on the current
      *  board, ignoring the contents of ASEMPTY, if it is encountered.
      *  For this to be true, FROM-TO must be a queen move and the
@@ -135,22 +469,20 @@ class Board {
         } else if (!from.isQueenMove(to)) {
             return false;
         } else {
-            int dir = from.direction(to);
-            Square next = from;
-            while (next != to) {
-                next = next.queenMove(dir, 1);
-                if (next != asEmpty && _allPieces[next.col()][next.row()]
-                        != EMPTY) {
-                    return false;
-                }
+            int f = from.index(), t = to.index();
+            long lo = Bitboard.rayLo(f, t) & occupiedLo(),
+                hi = Bitboard.rayHi(f, t) & occupiedHi();
+            if (asEmpty != null) {
+                lo &= ~Bitboard.loBit(asEmpty.index());
+                hi &= ~Bitboard.hiBit(asEmpty.index());
             }
-            return true;
+            return (lo | hi) == 0;
         }
     }
 
     /** Return true iff FROM is a valid starting square for a move. */
     boolean isLegal(Square from) {
-        return !(from != null && _allPieces[from.col()][from.row()] != _turn);
+        return !(from != null && get(from) != _turn);
     }
 
     /** Return true iff FROM-TO is a valid first part of move, ignoring
@@ -176,14 +508,14 @@ class Board {
 
     /** Move FROM-TO(SPEAR), assuming this is a legal move. */
     void makeMove(Square from, Square to, Square spear) {
-        _allMove.add(mv(from, to, spear));
-        put(_allPieces[from.col()][from.row()], to);
-        put(EMPTY, from);
-        put(SPEAR, spear);
+        makeMove(Move.pack(from.index(), to.index(), spear.index()));
+    }
 
-        _turn = _turn.opponent();
-        _winner = winner();
-        _winner = (_winner == null) ? EMPTY : _winner;
+    /** Move according to the packed move MOVE (see Move.pack), assuming
+     *  it is a legal move. */
+    void makeMove(int move) {
+        moveQueen(Move.packedFrom(move), Move.packedTo(move));
+        throwSpear(Move.packedSpear(move));
     }
 
     /** Move according to MOVE, assuming it is a legal move. */
@@ -196,16 +528,107 @@ class Board {
         if (numMoves() == 0) {
             return;
         }
-        Move last = _allMove.get(_allMove.size() - 1);
-        put(EMPTY, last.spear());
-        put(_allPieces[last.to().col()][last.to().row()], last.from());
-        put(EMPTY, last.to());
-        _allMove.remove(_allMove.size() - 1);
+        undoSpear();
+        undoQueen();
+    }
+
+    /** Make the first half of a move: move the queen on square index FROM
+     *  to square index TO, assuming this is legal.  The spear throw is
+     *  then pending: the turn does not change and the position's hash
+     *  differs from that of any complete position. */
+    void moveQueen(int from, int to) {
+        assert !spearPending();
+        putAt(pieceAt(from), to);
+        putAt(EMPTY, from);
+        _pendingFrom = from;
+        _pendingTo = to;
+        _hash ^= Zobrist.PENDING;
+    }
+
+    /** Complete the pending move by throwing the spear to square index
+     *  SPEAR, assuming this is legal. */
+    void throwSpear(int spear) {
+        assert spearPending();
+        putAt(SPEAR, spear);
+        _history[_numMoves] = Move.pack(_pendingFrom, _pendingTo, spear);
+        _numMoves += 1;
+        _pendingFrom = _pendingTo = -1;
+
+        _hash ^= Zobrist.PENDING ^ Zobrist.SIDE;
+        _turn = _turn.opponent();
         _winner = winner();
+        _winner = (_winner == null) ? EMPTY : _winner;
+    }
+
+    /** Undo the spear throw of the last move, leaving its queen move
+     *  pending.  There must be such a move. */
+    void undoSpear() {
+        assert !spearPending() && numMoves() > 0;
+        _numMoves -= 1;
+        int last = _history[_numMoves];
+        putAt(EMPTY, Move.packedSpear(last));
+        _pendingFrom = Move.packedFrom(last);
+        _pendingTo = Move.packedTo(last);
+        _hash ^= Zobrist.PENDING ^ Zobrist.SIDE;
         _turn = _turn.opponent();
+        _winner = EMPTY;
+    }
+
+    /** Undo the pending queen move. */
+    void undoQueen() {
+        assert spearPending();
+        putAt(pieceAt(_pendingTo), _pendingFrom);
+        putAt(EMPTY, _pendingTo);
+        _pendingFrom = _pendingTo = -1;
+        _hash ^= Zobrist.PENDING;
+        _winner = winner();
         _winner = (_winner == null) ? EMPTY : _winner;
     }
 
+    /** Return true iff a queen has moved and its spear throw is
+     *  pending. */
+    boolean spearPending() {
+        return _pendingFrom >= 0;
+    }
+
+    /** Append the queen moves (first halves of moves) for SIDE to MOVES,
+     *  packed as by Move.pack with a spear square of 0.  Return the
+     *  number appended. */
+    int generateQueenMoves(Piece side, MoveList moves) {
+        int start = moves.size();
+        for (long q = bitsLo(side); q != 0; q &= q - 1) {
+            addQueenMoves(Long.numberOfTrailingZeros(q), moves);
+        }
+        for (long q = bitsHi(side); q != 0; q &= q - 1) {
+            addQueenMoves(Bitboard.LO_BITS + Long.numberOfTrailingZeros(q),
+                          moves);
+        }
+        return moves.size() - start;
+    }
+
+    /** Append the queen moves from square index FROM to MOVES. */
+    private void addQueenMoves(int from, MoveList moves) {
+        for (long t = reachLo(from, -1); t != 0; t &= t - 1) {
+            moves.add(Move.pack(from, Long.numberOfTrailingZeros(t), 0));
+        }
+        for (long t = reachHi(from, -1); t != 0; t &= t - 1) {
+            moves.add(Move.pack(from, Bitboard.LO_BITS
+                                + Long.numberOfTrailingZeros(t), 0));
+        }
+    }
+
+    /** Append the complete moves that finish the pending queen move to
+     *  MOVES, packed as by Move.pack.  Return the number appended. */
+    int generateSpears(MoveList moves) {
+        assert spearPending();
+        int start = moves.size();
+        int from = _pendingFrom;
+        _pendingFrom = -1;
+        addSpears(from, _pendingTo, moves);
+        _pendingFrom = from;
+        return moves.size() - start;
+    }
+
     /** Return an Iterator over the Squares that are reachable by an
      *  unblocked queen move from FROM. Does not pay attention to what
      *  piece (if any) is on FROM, nor to whether the game is finished.
@@ -217,6 +640,81 @@ class Board {
         return new ReachableFromIterator(from, asEmpty);
     }
 
+    /** Append all legal moves for SIDE on the current board (regardless
+     *  of whose turn it is) to MOVES as packed moves (see Move.pack).
+     *  Return the number of moves appended. */
+    int generateMoves(Piece side, MoveList moves) {
+        int start = moves.size();
+        for (long q = bitsLo(side); q != 0; q &= q - 1) {
+            addMovesFrom(Long.numberOfTrailingZeros(q), moves);
+        }
+        for (long q = bitsHi(side); q != 0; q &= q - 1) {
+            addMovesFrom(Bitboard.LO_BITS + Long.numberOfTrailingZeros(q),
+                         moves);
+        }
+        return moves.size() - start;
+    }
+
+    /** Return the number of legal moves for SIDE on the current board
+     *  (regardless of whose turn it is), without generating them. */
+    int countLegalMoves(Piece side) {
+        int result;
+        result = 0;
+        for (long q = bitsLo(side); q != 0; q &= q - 1) {
+            result += countLegalMoves(Long.numberOfTrailingZeros(q));
+        }
+        for (long q = bitsHi(side); q != 0; q &= q - 1) {
+            result += countLegalMoves(Bitboard.LO_BITS
+                                      + Long.numberOfTrailingZeros(q));
+        }
+        return result;
+    }
+
+    /** Return the number of legal moves of the queen on QUEEN (regardless
+     *  of whose turn it is), without generating them. */
+    int countLegalMoves(Square queen) {
+        return countLegalMoves(queen.index());
+    }
+
+    /** Return the number of legal moves of the queen on square index FROM:
+     *  for each destination, the number of squares reachable from there
+     *  with FROM vacated. */
+    int countLegalMoves(int from) {
+        int result;
+        result = 0;
+        for (long t = reachLo(from, -1); t != 0; t &= t - 1) {
+            result += reachCount(Long.numberOfTrailingZeros(t), from);
+        }
+        for (long t = reachHi(from, -1); t != 0; t &= t - 1) {
+            result += reachCount(Bitboard.LO_BITS
+                                 + Long.numberOfTrailingZeros(t), from);
+        }
+        return result;
+    }
+
+    /** Append all moves of the queen on square index FROM to MOVES. */
+    private void addMovesFrom(int from, MoveList moves) {
+        for (long t = reachLo(from, -1); t != 0; t &= t - 1) {
+            addSpears(from, Long.numberOfTrailingZeros(t), moves);
+        }
+        for (long t = reachHi(from, -1); t != 0; t &= t - 1) {
+            addSpears(from, Bitboard.LO_BITS + Long.numberOfTrailingZeros(t),
+                      moves);
+        }
+    }
+
+    /** Append all moves FROM-TO(x) to MOVES, where FROM and TO are square
+     *  indices. */
+    private void addSpears(int from, int to, MoveList moves) {
+        for (long s = reachLo(to, from); s != 0; s &= s - 1) {
+            moves.add(Move.pack(from, to, Long.numberOfTrailingZeros(s)));
+        }
+        for (long s = reachHi(to, from); s != 0; s &= s - 1) {
+            moves.add(Move.pack(from, to, Bitboard.LO_BITS
+                                + Long.numberOfTrailingZeros(s)));
+        }
+    }
+
     /** Return an Iterator over all legal moves on the current board. */
     Iterator<Move> legalMoves() {
         return new LegalMoveIterator(_turn);
@@ -234,117 +732,60 @@ class Board {
         /** Iterator of all squares reachable by queen move from FROM,
          *  treating ASEMPTY as empty. */
         ReachableFromIterator(Square from, Square asEmpty) {
-            _from = from;
-            _dir = 0;
-            _steps = 0;
-            _asEmpty = asEmpty;
-            toNext();
+            int skip = asEmpty == null ? -1 : asEmpty.index();
+            _reachLo = reachLo(from.index(), skip);
+            _reachHi = reachHi(from.index(), skip);
         }
 
         @Override
         public boolean hasNext() {
-            return _dir < 8;
+            return (_reachLo | _reachHi) != 0;
         }
 
         @Override
         public Square next() {
             if (hasNext()) {
-                Square next = _from.queenMove(_dir, _steps);
-                toNext();
-                return next;
+                int k = Bitboard.first(_reachLo, _reachHi);
+                _reachLo &= ~Bitboard.loBit(k);
+                _reachHi &= ~Bitboard.hiBit(k);
+                return Square.sq(k);
             } else {
                 throw new NoSuchElementException("there is no next square");
             }
         }
 
-        /** Advance _dir and _steps, so that the next valid Square is
-         *  _steps steps in direction _dir from _from. */
-        private void toNext() {
-            _steps++;
-            if (hasNext() && !isUnblockedMove(_from,
-                    _from.queenMove(_dir, _steps), _asEmpty)) {
-                _steps = 0;
-                _dir++;
-                toNext();
-            }
-        }
-
-        /** Starting square. */
-        private Square _from;
-        /** Current direction. */
-        private int _dir;
-        /** Current distance. */
-        private int _steps;
-        /** Square treated as empty. */
-        private Square _asEmpty;
+        /** Squares not yet delivered, as a bitboard. */
+        private long _reachLo, _reachHi;
 
     }
 
-    /** An iterator used by legalMoves. */
+    /** An iterator used by legalMoves.  Moves are generated all at once
+     *  into a MoveList and converted to Move objects one at a time. */
     private class LegalMoveIterator implements Iterator<Move> {
 
         /** All legal moves for SIDE (WHITE or BLACK). */
         LegalMoveIterator(Piece side) {
-            _startingSquares = Square.iterator();
-            _spearThrows = NO_SQUARES;
-            _pieceMoves = NO_SQUARES;
-            _fromPiece = side;
-            toNext();
+            generateMoves(side, _moves);
         }
 
         @Override
         public boolean hasNext() {
-            return _startingSquares.hasNext()
-                    || _pieceMoves.hasNext() || _spearThrows.hasNext();
+            return _next < _moves.size();
         }
 
         @Override
         public Move next() {
             if (!hasNext()) {
                 throw new NoSuchElementException("there is no next");
-            } else {
-                Move temp = mv(_start, _nextSquare, _spearThrows.next());
-                toNext();
-                return temp;
             }
+            _next += 1;
+            return Move.mv(_moves.get(_next - 1));
         }
 
-        /** Advance so that the next valid Move is
-         *  _start-_nextSquare(sp), where sp is the next value of
-         *  _spearThrows. */
-        private void toNext() {
-            if (!_spearThrows.hasNext() && !_pieceMoves.hasNext()) {
-                if (!_startingSquares.hasNext()) {
-                    return;
-                }
-                _start = _startingSquares.next();
-                while (_allPieces[_start.col()][_start.row()] != _fromPiece) {
-                    if (!_startingSquares.hasNext()) {
-                        return;
-                    }
-                    _start = _startingSquares.next();
-                }
-                _pieceMoves = reachableFrom(_start, null);
-                toNext();
-            } else if (!_spearThrows.hasNext() && _pieceMoves.hasNext()) {
-                _nextSquare = _pieceMoves.next();
-                _spearThrows = reachableFrom(_nextSquare, _start);
-                toNext();
-            }
-        }
-
-        /** Color of side whose moves we are iterating. */
-        private Piece _fromPiece;
-        /** Current starting square. */
-        private Square _start;
-        /** Remaining starting squares to consider. */
-        private Iterator<Square> _startingSquares;
-        /** Current piece's new position. */
-        private Square _nextSquare;
-        /** Remaining moves from _start to consider. */
-        private Iterator<Square> _pieceMoves;
-        /** Remaining spear throws from _piece to consider. */
-        private Iterator<Square> _spearThrows;
+        /** The moves to deliver. */
+        private final MoveList _moves = new MoveList();
+        /** Position in _moves of the next move to deliver. */
+        private int _next;
     }
 
     @Override
@@ -353,25 +794,60 @@ class Board {
         for (int i = 9; i >= 0; i--) {
             result += "   ";
             for (int j = 0; j < SIZE - 1; j++) {
-                result += _allPieces[j][i].toString() + " ";
+                result += get(j, i).toString() + " ";
             }
-            result += _allPieces[SIZE - 1][i];
+            result += get(SIZE - 1, i);
             result += "\n";
         }
         return result;
     }
 
-    /** An empty iterator for initialization. */
-    private static final Iterator<Square> NO_SQUARES =
-        Collections.emptyIterator();
-
+    /** Number of empty squares adjacent to each square, by index. */
+    private final int[] _emptyNeighbours = new int[Bitboard.SQUARES];
+    /** Number of queens of each color (by ordinal) having at least one
+     *  empty adjacent square, and therefore a legal move. */
+    private final int[] _mobile = new int[Piece.values().length];
+    /** Squares (indices) moved from and to by the queen move whose spear
+     *  throw is pending, or -1 if none is. */
+    private int _pendingFrom, _pendingTo;
+    /** Zobrist hash of the current position. */
+    private long _hash;
     /** Piece whose turn it is (BLACK or WHITE). */
     private Piece _turn;
     /** Cached value of winner on this board, or EMPTY if it has not been
      *  computed. */
     private Piece _winner;
-    /** Squares in this board. */
-    private Piece[][] _allPieces;
-    /** My all moves. */
-    private ArrayList<Move> _allMove;
+    /** Number of king-step directions. */
+    private static final int DIRECTIONS = 8;
+
+    /** Region number (see regionIndex) of each square, by index, or -1
+     *  for squares holding spears. */
+    private final int[] _regionOf = new int[Bitboard.SQUARES];
+    /** Squares of each region as a bitboard, by region number. */
+    private final long[] _regionLo = new long[Bitboard.SQUARES],
+        _regionHi = new long[Bitboard.SQUARES];
+    /** Number of regions. */
+    private int _regionCount;
+    /** Result of the last call to connected. */
+    private long _fillLo, _fillHi;
+    /** The pieces that may occupy a square, in the order get tests them. */
+    private static final Piece[] OCCUPANTS = { WHITE, BLACK, SPEAR };
+
+    /** Contents of this board as one bitboard (see Bitboard) per Piece,
+     *  indexed by ordinal.  The entries for EMPTY are unused. */
+    private final long[] _lo = new long[Piece.values().length],
+        _hi = new long[Piece.values().length];
+    /** Occupancy mask of each line (see Lines), indexed by family and
+     *  line number. */
+    private final int[][] _lineOcc = new int[Lines.FAMILIES][];
+
+    {
+        for (int f = 0; f < Lines.FAMILIES; f += 1) {
+            _lineOcc[f] = new int[Lines.lineCount(f)];
+        }
+    }
+    /** The packed moves made (and not undone) on me, in order. */
+    private final int[] _history = new int[Bitboard.SQUARES];
+    /** Number of entries of _history in use. */
+    private int _numMoves;
 }
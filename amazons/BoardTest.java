@@ -3,9 +3,11 @@ package amazons;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import java.util.List;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Random;
 
 
 import static amazons.Piece.*;
@@ -274,4 +276,233 @@ public class BoardTest {
         }
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void testBitboards() {
+        Board test = new Board(TESTMODEL1);
+        assertEquals(4, Bitboard.count(test.bitsLo(WHITE),
+                                       test.bitsHi(WHITE)));
+        assertEquals(11, Bitboard.count(test.bitsLo(SPEAR),
+                                        test.bitsHi(SPEAR)));
+        assertEquals(100 - 19, Bitboard.count(test.bitsLo(EMPTY),
+                                              test.bitsHi(EMPTY)));
+        test.makeMove(sq("j4"), sq("j6"), sq("j5"));
+        for (int i = 0; i < 100; i++) {
+            for (Piece p : Piece.values()) {
+                assertEquals(test.get(sq(i)) == p,
+                             Bitboard.contains(test.bitsLo(p),
+                                               test.bitsHi(p), i));
+            }
+        }
+        test.undo();
+        assertEquals(WHITE, test.get(sq("j4")));
+        assertEquals(EMPTY, test.get(sq("j5")));
+        assertEquals(EMPTY, test.get(sq("j6")));
+    }
+
+    @Test
+    public void testReachTables() {
+        Board test = new Board(TESTMODEL1);
+        for (int from = 0; from < 100; from++) {
+            for (int skip = -1; skip < 100; skip += 7) {
+                long lo = test.reachLo(from, skip),
+                    hi = test.reachHi(from, skip);
+                int n = 0;
+                for (int to = 0; to < 100; to++) {
+                    boolean reached = test.isUnblockedMove(
+                        sq(from), sq(to), skip < 0 ? null : sq(skip));
+                    assertEquals(reached, Bitboard.contains(lo, hi, to));
+                    n += reached ? 1 : 0;
+                }
+                assertEquals(n, test.reachCount(from, skip));
+            }
+        }
+    }
+
+    @Test
+    public void testHash() {
+        Board first = new Board(), second = new Board();
+        long initial = first.hash();
+        first.makeMove(mv("d1-d2(d3)"));
+        first.makeMove(mv("d10-d9(d8)"));
+        first.makeMove(mv("g1-g2(g3)"));
+        second.makeMove(mv("g1-g2(g3)"));
+        second.makeMove(mv("d10-d9(d8)"));
+        second.makeMove(mv("d1-d2(d3)"));
+        assertEquals(first.toString(), second.toString());
+        assertEquals(first.hash(), second.hash());
+        assertEquals(first.hash(), new Board(first).hash());
+
+        first.undo();
+        assertNotEquals(first.hash(), second.hash());
+        first.undo();
+        first.undo();
+        assertEquals(initial, first.hash());
+
+        first.put(SPEAR, sq("e5"));
+        assertNotEquals(initial, first.hash());
+        first.put(EMPTY, sq("e5"));
+        assertEquals(initial, first.hash());
+    }
+
+    @Test
+    public void testHalfMoves() {
+        Board test = new Board(), whole = new Board();
+        long initial = test.hash();
+        String start = test.toString();
+        int d1 = sq("d1").index(), d7 = sq("d7").index();
+        test.moveQueen(d1, d7);
+        assertTrue(test.spearPending());
+        assertEquals(WHITE, test.turn());
+        assertEquals(WHITE, test.get(sq("d7")));
+        assertEquals(EMPTY, test.get(sq("d1")));
+        assertNotEquals(initial, test.hash());
+
+        MoveList spears = new MoveList();
+        int n = test.generateSpears(spears);
+        assertTrue(n > 0);
+        assertTrue(spears.indexOf(mv("d1-d7(g7)").packed()) >= 0);
+        assertTrue(spears.indexOf(mv("d1-d7(d1)").packed()) >= 0);
+
+        test.throwSpear(sq("g7").index());
+        whole.makeMove(mv("d1-d7(g7)"));
+        assertFalse(test.spearPending());
+        assertEquals(whole.toString(), test.toString());
+        assertEquals(whole.hash(), test.hash());
+        assertEquals(1, test.numMoves());
+
+        test.undoSpear();
+        assertTrue(test.spearPending());
+        assertEquals(WHITE, test.turn());
+        test.undoQueen();
+        assertFalse(test.spearPending());
+        assertEquals(start, test.toString());
+        assertEquals(initial, test.hash());
+
+        MoveList steps = new MoveList();
+        test.generateQueenMoves(WHITE, steps);
+        int total = 0;
+        for (int k = 0; k < steps.size(); k += 1) {
+            int step = steps.get(k);
+            test.moveQueen(Move.packedFrom(step), Move.packedTo(step));
+            spears.clear();
+            total += test.generateSpears(spears);
+            test.undoQueen();
+        }
+        assertEquals(test.countLegalMoves(WHITE), total);
+    }
+
+    @Test
+    public void testRegions() {
+        Board test = new Board();
+        checkRegions(test);
+        assertEquals(1, test.regionCount());
+        Random gen = new Random(61);
+        MoveList moves = new MoveList();
+        while (test.winner() == null) {
+            moves.clear();
+            int n = test.generateMoves(test.turn(), moves);
+            test.makeMove(moves.get(gen.nextInt(n)));
+            checkRegions(test);
+        }
+        assertTrue(test.regionCount() > 1);
+        while (test.numMoves() > 0) {
+            test.undo();
+            checkRegions(test);
+        }
+        assertEquals(1, test.regionCount());
+    }
+
+    /** Check that the regions of B are the sets of non-spear squares
+     *  connected by king steps. */
+    private void checkRegions(Board b) {
+        int n = b.regionCount();
+        for (int i = 0; i < 100; i++) {
+            int r = b.regionIndex(i);
+            if (b.get(sq(i)) == SPEAR) {
+                assertEquals(-1, r);
+                continue;
+            }
+            assertTrue(r >= 0 && r < n);
+            for (int j = 0; j < 100; j++) {
+                assertEquals(j == i || b.regionIndex(j) == r,
+                             j == i || Bitboard.contains(b.regionLo(r),
+                                                         b.regionHi(r), j)
+                             && b.get(sq(j)) != SPEAR);
+            }
+            for (int k : Bitboard.adjacent(i)) {
+                if (b.get(sq(k)) != SPEAR) {
+                    assertEquals(r, b.regionIndex(k));
+                }
+            }
+        }
+        for (int r = 0; r < n; r++) {
+            assertNotEquals(0, b.regionLo(r) | b.regionHi(r));
+            int first = Bitboard.first(b.regionLo(r), b.regionHi(r));
+            HashSet<Integer> reached = new HashSet<>();
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(first);
+            reached.add(first);
+            while (!queue.isEmpty()) {
+                for (int k : Bitboard.adjacent(queue.remove())) {
+                    if (b.get(sq(k)) != SPEAR && reached.add(k)) {
+                        queue.add(k);
+                    }
+                }
+            }
+            assertEquals(reached.size(),
+                         Bitboard.count(b.regionLo(r), b.regionHi(r)));
+        }
+    }
+
+    @Test
+    public void testHasMove() {
+        Board test = new Board(TESTMODEL2);
+        assertTrue(test.hasMove(BLACK));
+        assertTrue(test.hasMove(WHITE));
+        test.put(SPEAR, sq("a8"));
+        test.put(SPEAR, sq("c9"));
+        test.put(SPEAR, sq("e9"));
+        test.put(SPEAR, sq("h10"));
+        test.put(SPEAR, sq("i10"));
+        assertTrue(test.hasMove(BLACK));
+        test.put(SPEAR, sq("i7"));
+        test.put(SPEAR, sq("i8"));
+        assertFalse(test.hasMove(BLACK));
+        assertFalse(test.legalMoves(BLACK).hasNext());
+        test.put(EMPTY, sq("i8"));
+        assertTrue(test.hasMove(BLACK));
+        test.put(WHITE, sq("i8"));
+        assertFalse(test.hasMove(BLACK));
+
+        Board game = new Board();
+        game.makeMove(mv("d1-d2(d3)"));
+        assertNull(game.winner());
+        Board copy = new Board(game);
+        for (int sq = 0; sq < 100; sq++) {
+            if (copy.get(sq(sq)) == EMPTY) {
+                copy.put(SPEAR, sq(sq));
+            }
+        }
+        assertEquals(WHITE, copy.winner());
+    }
+
+    @Test
+    public void testCountLegalMoves() {
+        Board test = new Board();
+        assertEquals(2176, test.countLegalMoves(WHITE));
+        assertEquals(2176, test.countLegalMoves(BLACK));
+        test = new Board(TESTMODEL2);
+        assertEquals(11, test.countLegalMoves(BLACK));
+        assertEquals(4, test.countLegalMoves(sq("j7")));
+        test = new Board(TESTMODEL1);
+        for (Piece side : new Piece[] { WHITE, BLACK }) {
+            int n = 0;
+            for (Iterator<Move> iter = test.legalMoves(side);
+                 iter.hasNext(); iter.next()) {
+                n += 1;
+            }
+            assertEquals(n, test.countLegalMoves(side));
+        }
+    }
 }
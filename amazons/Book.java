@@ -0,0 +1,42 @@
+package amazons;
+
+import java.io.IOException;
+
+import static amazons.Square.sq;
+
+/** An opening book: the moves to play in positions near the start of a
+ *  game, found in advance by long searches (see BookBuilder) and looked
+ *  up by the positions' Zobrist hashes in a HashFile.  A Book may be
+ *  used by any number of threads at once.
+ *  @author Ruochen Liu
+ */
+final class Book {
+
+    /** The book in the file named NAME. */
+    Book(String name) throws IOException {
+        _moves = new HashFile(name);
+    }
+
+    /** Return the book move for the side to move on BOARD, packed as by
+     *  Move.pack, or Move.NONE if BOARD is not in the book.  A move that
+     *  is illegal on BOARD (as when it belongs to a different position
+     *  with the same hash) is not returned. */
+    int move(Board board) {
+        int move = _moves.get(board.hash(), Move.NONE);
+        if (move == Move.NONE
+            || !board.isLegal(sq(Move.packedFrom(move)),
+                              sq(Move.packedTo(move)),
+                              sq(Move.packedSpear(move)))) {
+            return Move.NONE;
+        }
+        return move;
+    }
+
+    /** Return the number of positions in the book. */
+    int size() {
+        return _moves.size();
+    }
+
+    /** The book moves, by the hashes of their positions. */
+    private final HashFile _moves;
+}
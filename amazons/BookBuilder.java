@@ -0,0 +1,157 @@
+package amazons;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A builder of opening books (see Book).  Starting from the initial
+ *  position, it expands the tree of positions reached by the moves each
+ *  side is likeliest to play, one move at a time: from each position,
+ *  the move chosen by a long search, and the other moves after which the
+ *  position evaluates best (see Evaluator).  Each level of the tree is
+ *  searched in parallel by single-threaded copies of an AI on
+ *  AI.HELPER_POOL, each taking the next unsearched position when it
+ *  finishes one.  Positions reached by more than one order of moves are
+ *  searched once.  A BookBuilder is used by one thread at a time.
+ *  @author Ruochen Liu
+ */
+final class BookBuilder {
+
+    /** A builder that searches with WORKERS copies of TEMPLATE, building
+     *  a book of the default depth and width with the default time for
+     *  each position. */
+    BookBuilder(AI template, int workers) {
+        this(template, workers, DEFAULT_PLIES, DEFAULT_WIDTH,
+             DEFAULT_SEARCH_TIME);
+    }
+
+    /** A builder that searches with WORKERS copies of TEMPLATE, giving
+     *  each position NANOS nanoseconds, and builds a book of the
+     *  positions less than PLIES moves from the start reached by the
+     *  WIDTH likeliest moves from each position. */
+    BookBuilder(AI template, int workers, int plies, int width,
+                long nanos) {
+        if (workers <= 0 || plies <= 0 || width <= 0 || nanos <= 0) {
+            throw Utils.error("book parameters must be positive");
+        }
+        _searchers = new AI[workers];
+        for (int k = 0; k < workers; k += 1) {
+            _searchers[k] = (AI) template.create(null, null);
+            _searchers[k].setThreads(1);
+        }
+        _plies = plies;
+        _width = width;
+        _nanos = nanos;
+    }
+
+    /** Build my book and write it to the file named NAME.  Return the
+     *  number of positions in it. */
+    int build(String name) throws IOException {
+        ArrayList<Board> level = new ArrayList<>();
+        level.add(new Board());
+        HashSet<Long> seen = new HashSet<>();
+        seen.add(level.get(0).hash());
+        long[] keys = new long[0];
+        int[] moves = new int[0];
+        int n;
+        n = 0;
+        for (int ply = 0; ply < _plies && !level.isEmpty(); ply += 1) {
+            int[] found = search(level);
+            keys = Arrays.copyOf(keys, n + level.size());
+            moves = Arrays.copyOf(moves, n + level.size());
+            ArrayList<Board> next = new ArrayList<>();
+            for (int k = 0; k < level.size(); k += 1) {
+                Board board = level.get(k);
+                keys[n] = board.hash();
+                moves[n] = found[k];
+                n += 1;
+                if (ply + 1 < _plies) {
+                    expand(board, found[k], next, seen);
+                }
+            }
+            level = next;
+        }
+        HashFile.write(name, keys, moves, n);
+        return n;
+    }
+
+    /** Return the moves chosen by searches of the positions in LEVEL, in
+     *  the same order, shared among my searchers. */
+    private int[] search(ArrayList<Board> level) {
+        int[] result = new int[level.size()];
+        AtomicInteger next = new AtomicInteger();
+        Future<?>[] running = new Future<?>[_searchers.length];
+        for (int w = 0; w < _searchers.length; w += 1) {
+            AI searcher = _searchers[w];
+            running[w] = AI.HELPER_POOL.submit(() -> {
+                    for (int k = next.getAndIncrement(); k < result.length;
+                         k = next.getAndIncrement()) {
+                        result[k] =
+                            searcher.searchMove(level.get(k), _nanos);
+                    }
+                });
+        }
+        for (Future<?> worker : running) {
+            try {
+                worker.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException("book search failed: "
+                                                + excp.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /** Add to NEXT the positions not in SEEN reached from BOARD by BEST
+     *  and by the other _width - 1 moves after which the position
+     *  evaluates best for the side to move, and add their hashes to
+     *  SEEN.  Positions in which the game is over are left out. */
+    private void expand(Board board, int best, ArrayList<Board> next,
+                        HashSet<Long> seen) {
+        int sense = board.turn() == Piece.WHITE ? 1 : -1;
+        _moves.clear();
+        board.generateMoves(board.turn(), _moves);
+        for (int k = 0; k < _moves.size(); k += 1) {
+            int move = _moves.get(k);
+            board.makeMove(move);
+            _moves.setScore(k, move == best ? Integer.MAX_VALUE
+                            : sense * _evaluator.score(board));
+            board.undo();
+        }
+        for (int k = 0; k < _width && k < _moves.size(); k += 1) {
+            _moves.pickBest(k);
+            Board child = new Board(board);
+            child.makeMove(_moves.get(k));
+            if (child.winner() == null && seen.add(child.hash())) {
+                next.add(child);
+            }
+        }
+    }
+
+    /** Default number of moves from the start covered by a book, and of
+     *  moves followed from each position. */
+    private static final int DEFAULT_PLIES = 4, DEFAULT_WIDTH = 3;
+
+    /** Default time to search each position, in nanoseconds. */
+    private static final long DEFAULT_SEARCH_TIME = 10000000000L;
+
+    /** AIs that search the positions of the book, one per thread. */
+    private final AI[] _searchers;
+
+    /** Number of moves from the start covered by my book, and of moves
+     *  followed from each position. */
+    private final int _plies, _width;
+
+    /** Time to search each position, in nanoseconds. */
+    private final long _nanos;
+
+    /** Evaluator used to choose the moves to follow. */
+    private final Evaluator _evaluator = new Evaluator();
+
+    /** Moves of the position being expanded. */
+    private final MoveList _moves = new MoveList();
+}
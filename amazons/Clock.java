@@ -0,0 +1,97 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** A game clock: the time each side has left to play, and the increment
+ *  credited to a side after each of its moves.  A new Clock is off
+ *  (the game is untimed) until set.  Times are in nanoseconds.
+ *  @author Ruochen Liu
+ */
+final class Clock {
+
+    /** Give each side TOTAL nanoseconds for the game, plus INCREMENT
+     *  nanoseconds after each of its moves.  A TOTAL of 0 turns the
+     *  clock off. */
+    void set(long total, long increment) {
+        if (total < 0 || increment < 0) {
+            throw Utils.error("times must be non-negative");
+        }
+        _total = total;
+        _increment = increment;
+        reset();
+    }
+
+    /** Restore each side's full time, for a new game. */
+    void reset() {
+        _remaining[WHITE.ordinal()] = _remaining[BLACK.ordinal()] = _total;
+    }
+
+    /** Return true iff the game is timed. */
+    boolean timed() {
+        return _total > 0;
+    }
+
+    /** Return the time SIDE has left. */
+    long remaining(Piece side) {
+        return _remaining[side.ordinal()];
+    }
+
+    /** Return the time credited after each move. */
+    long increment() {
+        return _increment;
+    }
+
+    /** Return the time SIDE may plan to spend on its next move, expecting
+     *  to make MOVES more moves that need thought: an equal share of its
+     *  time left (less a reserve), plus the increment, but no more than
+     *  maxMoveTime(SIDE).  Assumes the game is timed. */
+    long moveTime(Piece side, int moves) {
+        return Math.min(maxMoveTime(side),
+                        available(side) / Math.max(1, moves) + _increment);
+    }
+
+    /** Return the most time SIDE may spend on its next move: a fixed
+     *  fraction of its time left (less a reserve), so that the clock can
+     *  run down but never out.  Assumes the game is timed. */
+    long maxMoveTime(Piece side) {
+        return available(side) / MAX_SHARE;
+    }
+
+    /** Return the time SIDE has left, less the reserve, but at least
+     *  MIN_MOVE_TIME. */
+    private long available(Piece side) {
+        return Math.max(MIN_MOVE_TIME, remaining(side) - SAFETY_MARGIN);
+    }
+
+    /** Charge SIDE for ELAPSED time spent on its turn.  Return false iff
+     *  the clock is running and SIDE has now run out of time. */
+    boolean charge(Piece side, long elapsed) {
+        if (!timed()) {
+            return true;
+        }
+        _remaining[side.ordinal()] -= elapsed;
+        return _remaining[side.ordinal()] > 0;
+    }
+
+    /** Credit SIDE with the increment for a move it has made. */
+    void moved(Piece side) {
+        if (timed()) {
+            _remaining[side.ordinal()] += _increment;
+        }
+    }
+
+    /** Time kept in reserve, and the least time a move is allowed. */
+    static final long SAFETY_MARGIN = 50000000,
+        MIN_MOVE_TIME = 1000000;
+
+    /** Inverse of the largest fraction of the time left that one move
+     *  may use. */
+    static final int MAX_SHARE = 4;
+
+    /** Time each side starts with, or 0 if untimed. */
+    private long _total;
+    /** Time credited after each move. */
+    private long _increment;
+    /** Time left for each side, indexed by Piece ordinal. */
+    private final long[] _remaining = new long[Piece.values().length];
+}
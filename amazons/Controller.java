@@ -1,6 +1,9 @@
 package amazons;
 
 import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.regex.Pattern;
@@ -34,6 +37,13 @@ final class Controller {
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
         _reporter = reporter;
+        addAutoPlayer(DEFAULT_AUTO, autoPlayerTemplate);
+    }
+
+    /** Make TEMPLATE the exemplar for automated players chosen by NAME
+     *  in the auto command (as in "auto white NAME"). */
+    void addAutoPlayer(String name, Player template) {
+        _autoPlayers.put(name.toLowerCase(), template);
     }
 
     /** Play Amazons. */
@@ -41,16 +51,16 @@ final class Controller {
         _playing = true;
         _winner = null;
         _board.init();
+        _clock.reset();
         _white = _manualPlayerTemplate.create(WHITE, this);
         _black = _autoPlayerTemplate.create(BLACK, this);
         while (_playing) {
             _view.update(_board);
             String command;
             if (_winner == null) {
-                if (_board.turn() == WHITE) {
-                    command = _white.myMove();
-                } else {
-                    command = _black.myMove();
+                command = turn();
+                if (command == null) {
+                    continue;
                 }
             } else {
                 command = _nonPlayer.myMove();
@@ -69,12 +79,76 @@ final class Controller {
         }
     }
 
+    /** Play one game, without reading input, between players created
+     *  from the templates WHITE and BLACK, which must supply only moves.
+     *  The game is timed as set by setTime.  Return the winner. */
+    Piece playGame(Player white, Player black) {
+        _winner = null;
+        _board.init();
+        _clock.reset();
+        _white = white.create(WHITE, this);
+        _black = black.create(BLACK, this);
+        while (_winner == null) {
+            _view.update(_board);
+            String command = turn();
+            if (command != null) {
+                try {
+                    executeCommand(command);
+                } catch (IllegalArgumentException excp) {
+                    reportError("Error: %s%n", excp.getMessage());
+                }
+            }
+        }
+        _view.update(_board);
+        return _winner;
+    }
+
+    /** Let the player to move choose its command, with its opponent
+     *  pondering meanwhile, and charge it for the time taken.  Return the
+     *  command, or null if the player ran out of time, in which case its
+     *  opponent has won. */
+    private String turn() {
+        Piece side = _board.turn();
+        Player mover = side == WHITE ? _white : _black;
+        Player other = side == WHITE ? _black : _white;
+        long start = System.nanoTime();
+        other.ponder();
+        String command = mover.myMove();
+        long elapsed = System.nanoTime() - start;
+        other.stopPondering();
+        if (!_clock.charge(side, elapsed)) {
+            _winner = side.opponent();
+            reportNote("%s wins on time.", _winner.toName());
+            return null;
+        }
+        return command;
+    }
+
     /** Return the current board.  The value returned should not be
      *  modified by the caller. */
     Board board() {
         return _board;
     }
 
+    /** Return the game clock.  The value returned should not be
+     *  modified by the caller. */
+    Clock clock() {
+        return _clock;
+    }
+
+    /** Give each side TOTAL nanoseconds for each game, plus INCREMENT
+     *  nanoseconds after each of its moves, as for the time command.  A
+     *  TOTAL of 0 turns the clock off. */
+    void setTime(long total, long increment) {
+        _clock.set(total, increment);
+    }
+
+    /** Return the winner of the current game, or null if it is not
+     *  over. */
+    Piece winner() {
+        return _winner;
+    }
+
     /** Return a random integer in the range 0 inclusive to U, exclusive.
      *  Available for use by AIs that use random selections in some cases.
      *  Once setRandomSeed is called with a particular value, this method
@@ -141,9 +215,14 @@ final class Controller {
     private Command[] _commands = {
         new Command("quit$", this::doQuit),
         new Command("seed\\s+(\\d+)$", this::doSeed),
+        new Command("time\\s+(\\d+)\\s+(\\d+)$", this::doTime),
         new Command("dump$", this::doDump),
+        new Command("stats$", this::doStats),
+        new Command("(perft|divide)\\s+(\\d+)(?:\\s+(\\d+))?$",
+                    this::doPerft),
         new Command("new$", this::doNew),
-        new Command("(?i)auto\\s+(white|black)$", this::doAuto),
+        new Command("(?i)auto\\s+(white|black)(?:\\s+(\\w+))?$",
+                    this::doAuto),
         new Command("(?i)manual\\s+(white|black)$", this::doManual),
         new Command(MOVE_PATTERN.pattern(), this::doTheMove)
     };
@@ -178,6 +257,7 @@ final class Controller {
     /** Command "new". */
     private void doNew(Matcher unused) {
         _board.init();
+        _clock.reset();
         _winner = null;
     }
 
@@ -195,29 +275,105 @@ final class Controller {
         }
     }
 
+    /** Command "time T I", giving each side T seconds for the game plus
+     *  I seconds per move, where T and I are the groups of MAT.  T = 0
+     *  turns the clock off. */
+    private void doTime(Matcher mat) {
+        try {
+            setTime(Math.multiplyExact(Long.parseLong(mat.group(1)),
+                                       NANOS_PER_SECOND),
+                    Math.multiplyExact(Long.parseLong(mat.group(2)),
+                                       NANOS_PER_SECOND));
+        } catch (NumberFormatException | ArithmeticException excp) {
+            throw error("number too large");
+        }
+    }
+
     /** Dump the contents of the board on standard output. */
     private void doDump(Matcher unused) {
         System.out.printf("===%n%s===%n", _board);
     }
 
+    /** Command "stats": print the statistics of the last search by each
+     *  player that keeps them (see Player.searchStats) on the standard
+     *  output. */
+    private void doStats(Matcher unused) {
+        for (Player player : new Player[] { _white, _black }) {
+            String stats = player == null ? null : player.searchStats();
+            if (stats != null) {
+                System.out.printf("%s:%n%s", player.myPiece().toName(),
+                                  stats);
+            }
+        }
+    }
+
+    /** Command "perft N [M]" or "divide N [M]" (group 1 of MAT): print
+     *  the number of sequences of N legal moves from the current position
+     *  (see Perft), in total or for each legal move, caching counts in a
+     *  table of M megabytes (none by default), and the rate at which they
+     *  were counted. */
+    private void doPerft(Matcher mat) {
+        int depth, megabytes;
+        try {
+            depth = Integer.parseInt(mat.group(2));
+            megabytes =
+                mat.group(3) == null ? 0 : Integer.parseInt(mat.group(3));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        Perft perft = new Perft(megabytes);
+        long start = System.nanoTime();
+        long nodes;
+        LinkedHashMap<Move, Long> counts = null;
+        if (mat.group(1).equals("divide")) {
+            counts = perft.divide(_board, depth);
+            nodes = 0;
+            for (long count : counts.values()) {
+                nodes += count;
+            }
+        } else {
+            nodes = perft.perft(_board, depth);
+        }
+        long nanos = Math.max(1, System.nanoTime() - start);
+        if (counts != null) {
+            for (Map.Entry<Move, Long> entry : counts.entrySet()) {
+                System.out.printf("%s: %d%n", entry.getKey(),
+                                  entry.getValue());
+            }
+        }
+        System.out.printf("perft %d: %d nodes in %d ms (%.0f nodes/s)%n",
+                          depth, nodes, nanos / NANOS_PER_MILLI,
+                          (double) nodes * NANOS_PER_SECOND / nanos);
+    }
+
     /** Command DoTheMove.
      * @param moveMat */
     private void doTheMove(Matcher moveMat) {
+        Piece side = board().turn();
         board().makeMove(mv(moveMat.group()));
+        _clock.moved(side);
         _winner = board().winner();
         if (_winner != null) {
             reportNote("%s wins.", _winner.toName());
         }
     }
 
-    /** Command Auto.
+    /** Command Auto, making the side in group 1 of MAT an automated
+     *  player of the kind named in group 2 (by default, the one given
+     *  to my constructor).
      * @param  mat */
     private void doAuto(Matcher mat) {
         String side = mat.group(1).toLowerCase();
+        String name = mat.group(2) == null
+            ? DEFAULT_AUTO : mat.group(2).toLowerCase();
+        Player template = _autoPlayers.get(name);
+        if (template == null) {
+            throw error("unknown automated player: %s", name);
+        }
         if (side.equals("white")) {
-            _white = _autoPlayerTemplate.create(WHITE, this);
+            _white = template.create(WHITE, this);
         } else {
-            _black = _autoPlayerTemplate.create(BLACK, this);
+            _black = template.create(BLACK, this);
         }
     }
 
@@ -235,6 +391,15 @@ final class Controller {
     /** The board. */
     private Board _board = new Board();
 
+    /** The game clock. */
+    private final Clock _clock = new Clock();
+
+    /** Nanoseconds in a second. */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
     /** The winning side of the current game. */
     private Piece _winner;
 
@@ -264,6 +429,12 @@ final class Controller {
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
 
+    /** Templates for automated players, by name. */
+    private final HashMap<String, Player> _autoPlayers = new HashMap<>();
+
+    /** Name of the automated player given to the constructor. */
+    private static final String DEFAULT_AUTO = "ai";
+
     /** Reporter for messages and errors. */
     private Reporter _reporter;
 
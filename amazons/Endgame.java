@@ -0,0 +1,126 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** Exact play for separated positions: those in which no region of the
+ *  board (see Board.regionCount) holds queens of both sides.  From then
+ *  on the sides cannot interfere with each other, so each region is a
+ *  game of its own, whose value is the number of moves its owner can
+ *  make in it (see FillSolver), and the side to move wins exactly when
+ *  its regions allow it more moves in all than its opponent's allow the
+ *  opponent.  The solver's cache lasts across moves, so that regions
+ *  recurring in later positions of the game are solved once.  Each
+ *  search is limited to a node budget, beyond which it gives up, so
+ *  that large regions are left to the ordinary search until they have
+ *  shrunk.  An Endgame is used by one thread at a time.
+ *  @author Ruochen Liu
+ */
+final class Endgame {
+
+    /** Return true iff no region of BOARD holds queens of both sides. */
+    static boolean separated(Board board) {
+        long whiteLo = board.bitsLo(WHITE), whiteHi = board.bitsHi(WHITE),
+            blackLo = board.bitsLo(BLACK), blackHi = board.bitsHi(BLACK);
+        for (int k = 0; k < board.regionCount(); k += 1) {
+            long lo = board.regionLo(k), hi = board.regionHi(k);
+            if (((lo & whiteLo) | (hi & whiteHi)) != 0
+                && ((lo & blackLo) | (hi & blackHi)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a best move for the side to move on BOARD, a separated
+     *  position in which that side can move, packed as by Move.pack: a
+     *  move after which the side can still make as many moves as
+     *  possible.  Returns Move.NONE if the search exceeds its budget.
+     *  BOARD is restored before returning. */
+    int bestMove(Board board) {
+        _nodes = 0;
+        Piece side = board.turn();
+        long queensLo = board.bitsLo(side), queensHi = board.bitsHi(side);
+        int n = board.regionCount();
+        long[] regionsLo = new long[n], regionsHi = new long[n];
+        for (int k = 0; k < n; k += 1) {
+            regionsLo[k] = board.regionLo(k);
+            regionsHi[k] = board.regionHi(k);
+        }
+        for (int k = 0; k < n; k += 1) {
+            long lo = regionsLo[k], hi = regionsHi[k];
+            if (((lo & queensLo) | (hi & queensHi)) == 0) {
+                continue;
+            }
+            int value = _solver.value(board, lo, hi, side,
+                                      NODE_BUDGET - _nodes);
+            _nodes += _solver.nodes();
+            if (value < 0) {
+                return Move.NONE;
+            } else if (value > 0) {
+                return findFill(board, lo & queensLo, hi & queensHi,
+                                lo, hi, side, value);
+            }
+        }
+        return Move.NONE;
+    }
+
+    /** Look regions up in TABLEBASE, or in no tablebase if it is null,
+     *  before searching them. */
+    void setTablebase(Tablebase tablebase) {
+        _solver.setTablebase(tablebase);
+    }
+
+    /** Return the number of nodes searched by the last call to
+     *  bestMove. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return a move, packed as by Move.pack, by one of OWNER's queens
+     *  QLO, QHI in the region LO, HI of BOARD after which OWNER can make
+     *  VALUE - 1 more moves in that region, or Move.NONE if the search
+     *  exceeds its budget. */
+    private int findFill(Board board, long qLo, long qHi, long lo, long hi,
+                         Piece owner, int value) {
+        for (int from = Bitboard.first(qLo, qHi); from >= 0;
+             from = Bitboard.next(from, qLo, qHi)) {
+            long toLo = board.reachLo(from, -1),
+                toHi = board.reachHi(from, -1);
+            for (int to = Bitboard.first(toLo, toHi); to >= 0;
+                 to = Bitboard.next(to, toLo, toHi)) {
+                board.moveQueen(from, to);
+                long spearLo = board.reachLo(to, -1),
+                    spearHi = board.reachHi(to, -1);
+                for (int spear = Bitboard.first(spearLo, spearHi);
+                     spear >= 0;
+                     spear = Bitboard.next(spear, spearLo, spearHi)) {
+                    board.throwSpear(spear);
+                    int rest = _solver.partsValue(board, lo, hi, owner,
+                                                  NODE_BUDGET - _nodes);
+                    _nodes += _solver.nodes();
+                    board.undoSpear();
+                    if (rest == value - 1 || rest < 0) {
+                        board.undoQueen();
+                        return rest < 0 ? Move.NONE
+                            : Move.pack(from, to, spear);
+                    }
+                }
+                board.undoQueen();
+            }
+        }
+        return Move.NONE;
+    }
+
+    /** Number of moves a call to bestMove may search. */
+    private static final long NODE_BUDGET = 1 << 18;
+
+    /** Base 2 logarithm of the number of regions my solver caches. */
+    private static final int CACHE_BITS = 18;
+
+    /** Solver for the values of regions. */
+    private final FillSolver _solver = new FillSolver(CACHE_BITS);
+
+    /** Number of moves searched by the current or last call to
+     *  bestMove. */
+    private long _nodes;
+}
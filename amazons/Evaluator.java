@@ -0,0 +1,254 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** A static evaluator of Boards, based on territory.  Distances from
+ *  each side's queens to the empty squares are found by breadth-first
+ *  flood fills over bitboards (see Bitboard), one layer of squares at a
+ *  time: once counting queen moves and once counting king steps.  A
+ *  square belongs to the side that reaches it in fewer moves, and is
+ *  shared if both reach it in the same number.  The value combines the
+ *  queen-move territory, which decides the game once the board is
+ *  partitioned, with the king-step territory and the queens' mobility,
+ *  which matter more while the board is open, weighting each by the
+ *  number of empty squares left.  Queen-move territory in regions held
+ *  by one side is reduced by the squares that side cannot actually fill
+ *  (see FillSolver), found in a tablebase where possible (see
+ *  setTablebase).  Each Evaluator keeps scratch state, so one should be
+ *  used by one thread at a time.
+ *  @author Ruochen Liu
+ */
+final class Evaluator {
+
+    /** Return the value of BOARD: positive if it favors white, negative
+     *  if it favors black. */
+    int score(Board board) {
+        int empties = Bitboard.count(board.bitsLo(EMPTY),
+                                     board.bitsHi(EMPTY));
+        int open = Math.min(empties, OPENING_EMPTIES);
+        int closed = OPENING_EMPTIES - open;
+        int queens = territory(board, false) + defects(board);
+        int kings = territory(board, true);
+        int mobility = mobility(board, WHITE) - mobility(board, BLACK);
+        return (queens * (QUEEN_OPEN * open + QUEEN_CLOSED * closed)
+                + (kings * KING_OPEN + mobility * MOBILITY_OPEN) * open)
+            / OPENING_EMPTIES;
+    }
+
+    /** Look single-owner regions up in TABLEBASE, or in no tablebase if
+     *  it is null, before searching them. */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
+        if (_solver != null) {
+            _solver.setTablebase(tablebase);
+        }
+    }
+
+    /** Return the number of empty squares of BOARD that queens of both
+     *  sides can eventually reach, ignoring spears yet to be thrown.  The
+     *  rest of the board is divided into regions each held by one side,
+     *  which can be filled without contest. */
+    int contested(Board board) {
+        long emptyLo = board.bitsLo(EMPTY), emptyHi = board.bitsHi(EMPTY);
+        reachable(board.bitsLo(WHITE), board.bitsHi(WHITE), emptyLo, emptyHi);
+        long whiteLo = _lo, whiteHi = _hi;
+        reachable(board.bitsLo(BLACK), board.bitsHi(BLACK), emptyLo, emptyHi);
+        return Bitboard.count(whiteLo & _lo, whiteHi & _hi);
+    }
+
+    /** Return the correction to the queen-move territory of BOARD for
+     *  defective regions: TERRITORY less, for the region's owner, for
+     *  each empty square of a region holding one side's queens that
+     *  those queens cannot use (see FillSolver).  Regions of more than
+     *  SOLVE_EMPTIES empty squares, or that take more than SOLVE_BUDGET
+     *  moves to solve, are left uncorrected, as is every region while a
+     *  spear throw is pending (see Board.moveQueen), since the regions
+     *  are then unsettled and FillSolver cannot make moves. */
+    private int defects(Board board) {
+        if (board.spearPending()) {
+            return 0;
+        }
+        long whiteLo = board.bitsLo(WHITE), whiteHi = board.bitsHi(WHITE),
+            blackLo = board.bitsLo(BLACK), blackHi = board.bitsHi(BLACK),
+            emptyLo = board.bitsLo(EMPTY), emptyHi = board.bitsHi(EMPTY);
+        int n;
+        n = 0;
+        for (int k = 0; k < board.regionCount(); k += 1) {
+            long lo = board.regionLo(k), hi = board.regionHi(k);
+            boolean white = ((lo & whiteLo) | (hi & whiteHi)) != 0,
+                black = ((lo & blackLo) | (hi & blackHi)) != 0;
+            if (white != black && Bitboard.count(lo & emptyLo, hi & emptyHi)
+                <= SOLVE_EMPTIES) {
+                _regionsLo[n] = lo;
+                _regionsHi[n] = hi;
+                n += 1;
+            }
+        }
+        int result;
+        result = 0;
+        for (int k = 0; k < n; k += 1) {
+            long lo = _regionsLo[k], hi = _regionsHi[k];
+            Piece owner = ((lo & whiteLo) | (hi & whiteHi)) != 0
+                ? WHITE : BLACK;
+            if (_solver == null) {
+                _solver = new FillSolver(SOLVER_CACHE_BITS);
+                _solver.setTablebase(_tablebase);
+            }
+            int value = _solver.value(board, lo, hi, owner, SOLVE_BUDGET);
+            if (value >= 0) {
+                int wasted = Bitboard.count(lo & emptyLo, hi & emptyHi)
+                    - value;
+                result -= (owner == WHITE ? TERRITORY : -TERRITORY) * wasted;
+            }
+        }
+        return result;
+    }
+
+    /** Set _lo and _hi to the squares in EMPTYLO, EMPTYHI connected by
+     *  king steps through such squares to the squares LO, HI. */
+    private void reachable(long lo, long hi, long emptyLo, long emptyHi) {
+        long seenLo, seenHi;
+        seenLo = seenHi = 0;
+        while ((lo | hi) != 0) {
+            kingSteps(lo, hi);
+            lo = _lo & emptyLo & ~seenLo;
+            hi = _hi & emptyHi & ~seenHi;
+            seenLo |= lo;
+            seenHi |= hi;
+        }
+        _lo = seenLo;
+        _hi = seenHi;
+    }
+
+    /** Return the territory balance of BOARD, counting in king steps iff
+     *  KING and otherwise in queen moves: TERRITORY for each empty square
+     *  white reaches first, less TERRITORY for each that black reaches
+     *  first, with TIE for each square reached at once, credited to the
+     *  side to move. */
+    private int territory(Board board, boolean king) {
+        long emptyLo = board.bitsLo(EMPTY), emptyHi = board.bitsHi(EMPTY);
+        long whiteLo = board.bitsLo(WHITE), whiteHi = board.bitsHi(WHITE);
+        long blackLo = board.bitsLo(BLACK), blackHi = board.bitsHi(BLACK);
+        long seenWhiteLo, seenWhiteHi, seenBlackLo, seenBlackHi;
+        seenWhiteLo = seenWhiteHi = seenBlackLo = seenBlackHi = 0;
+        int tie = board.turn() == WHITE ? TIE : -TIE;
+        int result;
+        result = 0;
+        while ((whiteLo | whiteHi | blackLo | blackHi) != 0) {
+            expand(board, whiteLo, whiteHi, king);
+            whiteLo = _lo & emptyLo & ~seenWhiteLo;
+            whiteHi = _hi & emptyHi & ~seenWhiteHi;
+            expand(board, blackLo, blackHi, king);
+            blackLo = _lo & emptyLo & ~seenBlackLo;
+            blackHi = _hi & emptyHi & ~seenBlackHi;
+
+            long bothLo = whiteLo & blackLo, bothHi = whiteHi & blackHi;
+            result += TERRITORY
+                * (Bitboard.count(whiteLo & ~seenBlackLo & ~bothLo,
+                                  whiteHi & ~seenBlackHi & ~bothHi)
+                   - Bitboard.count(blackLo & ~seenWhiteLo & ~bothLo,
+                                    blackHi & ~seenWhiteHi & ~bothHi))
+                + tie * Bitboard.count(bothLo & ~seenWhiteLo & ~seenBlackLo,
+                                       bothHi & ~seenWhiteHi & ~seenBlackHi);
+            seenWhiteLo |= whiteLo;
+            seenWhiteHi |= whiteHi;
+            seenBlackLo |= blackLo;
+            seenBlackHi |= blackHi;
+        }
+        return result;
+    }
+
+    /** Set _lo and _hi to the squares one king step (iff KING) or one
+     *  unblocked queen move away from the squares LO, HI of BOARD. */
+    private void expand(Board board, long lo, long hi, boolean king) {
+        if (king) {
+            kingSteps(lo, hi);
+            return;
+        }
+        long resultLo, resultHi;
+        resultLo = resultHi = 0;
+        for (; lo != 0; lo &= lo - 1) {
+            int sq = Long.numberOfTrailingZeros(lo);
+            resultLo |= board.reachLo(sq, -1);
+            resultHi |= board.reachHi(sq, -1);
+        }
+        for (; hi != 0; hi &= hi - 1) {
+            int sq = Bitboard.LO_BITS + Long.numberOfTrailingZeros(hi);
+            resultLo |= board.reachLo(sq, -1);
+            resultHi |= board.reachHi(sq, -1);
+        }
+        _lo = resultLo;
+        _hi = resultHi;
+    }
+
+    /** Set _lo and _hi to the squares one king step away from the
+     *  squares LO, HI. */
+    private void kingSteps(long lo, long hi) {
+        long resultLo, resultHi;
+        resultLo = resultHi = 0;
+        for (int dir = 0; dir < DIRECTIONS; dir += 1) {
+            resultLo |= Bitboard.shiftLo(lo, hi, dir);
+            resultHi |= Bitboard.shiftHi(lo, hi, dir);
+        }
+        _lo = resultLo;
+        _hi = resultHi;
+    }
+
+    /** Return the total number of squares SIDE's queens on BOARD can
+     *  reach in one move. */
+    private int mobility(Board board, Piece side) {
+        int result;
+        result = 0;
+        for (long q = board.bitsLo(side); q != 0; q &= q - 1) {
+            result += board.reachCount(Long.numberOfTrailingZeros(q), -1);
+        }
+        for (long q = board.bitsHi(side); q != 0; q &= q - 1) {
+            result += board.reachCount(Bitboard.LO_BITS
+                                       + Long.numberOfTrailingZeros(q), -1);
+        }
+        return result;
+    }
+
+    /** Number of queen-move directions. */
+    private static final int DIRECTIONS = 8;
+
+    /** Number of queens on the board. */
+    private static final int QUEENS = 8;
+
+    /** Number of empty squares at the start of a game, at and above which
+     *  the board counts as fully open. */
+    private static final int OPENING_EMPTIES = Bitboard.SQUARES - QUEENS;
+
+    /** Value of a square owned outright, and of a square reached by both
+     *  sides at once (for the side to move), in territory. */
+    private static final int TERRITORY = 2, TIE = 1;
+
+    /** Weights of queen-move territory on an open and a closed board. */
+    private static final int QUEEN_OPEN = 4, QUEEN_CLOSED = 8;
+
+    /** Weights of king-step territory and mobility on an open board.  Both
+     *  fade to nothing as the board fills. */
+    private static final int KING_OPEN = 2, MOBILITY_OPEN = 1;
+
+    /** Largest number of empty squares in a region whose defects are
+     *  counted, and most moves searched to find them. */
+    private static final int SOLVE_EMPTIES = 16, SOLVE_BUDGET = 512;
+
+    /** Base 2 logarithm of the number of regions my solver caches. */
+    private static final int SOLVER_CACHE_BITS = 14;
+
+    /** Solver for the values of single-owner regions, created when first
+     *  needed. */
+    private FillSolver _solver;
+
+    /** Tablebase for my solver, or null. */
+    private Tablebase _tablebase;
+
+    /** The regions defects solves, copied before solving them changes the
+     *  board's region numbers. */
+    private final long[] _regionsLo = new long[Bitboard.SQUARES],
+        _regionsHi = new long[Bitboard.SQUARES];
+
+    /** Result words of the last call to expand. */
+    private long _lo, _hi;
+}
@@ -0,0 +1,265 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** A solver for single-owner regions: regions of the board (see
+ *  Board.regionCount) holding the queens of only one side.  The value of
+ *  such a region is the number of moves its owner can make in it, which
+ *  may be less than its number of empty squares if it is "defective"
+ *  (has squares the queens cannot use without wasting others).  It is
+ *  found by a depth-first search of the owner's moves in the region,
+ *  where each move leaves a region that is itself divided into smaller
+ *  regions whose values add.  The search stops as soon as it finds a
+ *  way of using every empty square, which bounds the value from above,
+ *  and skips moves that leave too few usable squares (squares in
+ *  regions the owner's queens can still reach) to improve on the best
+ *  found so far.  King steps, with the spear thrown back, are tried
+ *  first, since they most often fill a region completely.  Values are
+ *  cached by the bitmasks of the region's squares and of the queens in
+ *  it, which do not depend on the owner's color, in a fixed-size table
+ *  of primitive arrays that lasts across positions, so that each region
+ *  is solved once.  Regions found in the tablebase, if there is one (see
+ *  setTablebase), are not searched at all.  A search may be given a
+ *  budget of moves, beyond which it gives up.  A FillSolver is used by
+ *  one thread at a time.
+ *  @author Ruochen Liu
+ */
+final class FillSolver {
+
+    /** A solver whose cache holds about 2 ** LOGSIZE regions. */
+    FillSolver(int logSize) {
+        int size = 1 << logSize;
+        _keyLo = new long[size];
+        _keyHi = new long[size];
+        _queensLo = new long[size];
+        _queensHi = new long[size];
+        _values = new int[size];
+        _mask = size - 1;
+    }
+
+    /** Return the number of moves OWNER can make on BOARD within the
+     *  region LO, HI, which holds only OWNER's queens, or -1 if finding
+     *  it takes more than BUDGET moves.  BOARD is restored before
+     *  returning. */
+    int value(Board board, long lo, long hi, Piece owner, long budget) {
+        start(budget);
+        return solve(board, lo, hi, owner, 0);
+    }
+
+    /** Return the total number of moves OWNER can make on BOARD in the
+     *  regions within the squares LO, HI that hold OWNER's queens (and
+     *  no others), or -1 if finding it takes more than BUDGET moves. */
+    int partsValue(Board board, long lo, long hi, Piece owner,
+                   long budget) {
+        start(budget);
+        return partsValue(board, owner, 0, parts(board, lo, hi, owner, 0));
+    }
+
+    /** Look regions up in TABLEBASE, or in no tablebase if it is
+     *  null, before searching them. */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
+    }
+
+    /** Return the number of moves searched by the last call to value or
+     *  partsValue. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Prepare for a search of at most BUDGET moves. */
+    private void start(long budget) {
+        _nodes = 0;
+        _budget = budget;
+    }
+
+    /** Return the value of the region LO, HI of BOARD for OWNER, as for
+     *  value, searching at DEPTH moves from the root.  Only a failure of
+     *  the whole search (DEPTH 0) is cached, since deeper ones fail for
+     *  lack of what remains of the budget. */
+    private int solve(Board board, long lo, long hi, Piece owner,
+                      int depth) {
+        long queensLo = lo & (board.bitsLo(WHITE) | board.bitsLo(BLACK)),
+            queensHi = hi & (board.bitsHi(WHITE) | board.bitsHi(BLACK));
+        int slot = slot(lo, hi, queensLo, queensHi);
+        int bound = Bitboard.count(lo, hi) - Bitboard.count(queensLo,
+                                                            queensHi);
+        if (_keyLo[slot] == lo && _keyHi[slot] == hi
+            && _queensLo[slot] == queensLo && _queensHi[slot] == queensHi) {
+            int cached = _values[slot];
+            if (cached >= 0 || -cached >= _budget) {
+                return cached >= 0 ? cached : -1;
+            }
+        }
+        if (_tablebase != null) {
+            int known = _tablebase.value(board, lo, hi);
+            if (known >= 0) {
+                store(slot, lo, hi, queensLo, queensHi, known);
+                return known;
+            }
+        }
+        int best;
+        best = 0;
+        for (int from = Bitboard.first(queensLo, queensHi);
+             from >= 0 && best < bound;
+             from = Bitboard.next(from, queensLo, queensHi)) {
+            long reachLo = board.reachLo(from, -1),
+                reachHi = board.reachHi(from, -1);
+            long nearLo = reachLo & Bitboard.neighboursLo(from),
+                nearHi = reachHi & Bitboard.neighboursHi(from);
+            for (int pass = 0; pass < 2 && best < bound; pass += 1) {
+                long toLo = pass == 0 ? nearLo : reachLo & ~nearLo,
+                    toHi = pass == 0 ? nearHi : reachHi & ~nearHi;
+                for (int to = Bitboard.first(toLo, toHi);
+                     to >= 0 && best < bound;
+                     to = Bitboard.next(to, toLo, toHi)) {
+                    board.moveQueen(from, to);
+                    best = tryThrows(board, from, to, lo, hi, owner, depth,
+                                     best, bound);
+                    board.undoQueen();
+                    if (best < 0) {
+                        if (depth == 0) {
+                            store(slot, lo, hi, queensLo, queensHi,
+                                  (int) -Math.min(_budget, MAX_BUDGET));
+                        }
+                        return -1;
+                    }
+                }
+            }
+        }
+        store(slot, lo, hi, queensLo, queensHi, best);
+        return best;
+    }
+
+    /** Record VALUE in my cache at SLOT for the region LO, HI with queens
+     *  on QLO, QHI. */
+    private void store(int slot, long lo, long hi, long qLo, long qHi,
+                       int value) {
+        _keyLo[slot] = lo;
+        _keyHi[slot] = hi;
+        _queensLo[slot] = qLo;
+        _queensHi[slot] = qHi;
+        _values[slot] = value;
+    }
+
+    /** Return the greater of BEST and the most moves OWNER can make in
+     *  the region LO, HI of BOARD starting with one of the spear throws
+     *  available after the pending queen move FROM-TO, searching at
+     *  DEPTH moves from the root, but no more than BOUND, or -1 if the
+     *  search exceeds its budget.  The throw back to FROM is tried
+     *  first. */
+    private int tryThrows(Board board, int from, int to, long lo, long hi,
+                          Piece owner, int depth, int best, int bound) {
+        long spearLo = board.reachLo(to, -1) & ~Bitboard.loBit(from),
+            spearHi = board.reachHi(to, -1) & ~Bitboard.hiBit(from);
+        for (int spear = from; spear >= 0 && best < bound;
+             spear = spear == from ? Bitboard.first(spearLo, spearHi)
+                 : Bitboard.next(spear, spearLo, spearHi)) {
+            board.throwSpear(spear);
+            _nodes += 1;
+            int rest;
+            if (_nodes > _budget) {
+                rest = -1;
+            } else {
+                int n = parts(board, lo, hi, owner, depth + 1);
+                if (1 + _usable <= best) {
+                    rest = 0;
+                } else {
+                    rest = partsValue(board, owner, depth + 1, n);
+                }
+            }
+            board.undoSpear();
+            if (rest < 0) {
+                return -1;
+            }
+            best = Math.max(best, rest + 1);
+        }
+        return best;
+    }
+
+    /** Return the total value for OWNER of the N regions of BOARD
+     *  recorded for DEPTH by parts, or -1 if the search exceeds its
+     *  budget. */
+    private int partsValue(Board board, Piece owner, int depth, int n) {
+        int result;
+        result = 0;
+        for (int k = 0; k < n; k += 1) {
+            int value = solve(board, _partsLo[depth][k], _partsHi[depth][k],
+                              owner, depth);
+            if (value < 0) {
+                return -1;
+            }
+            result += value;
+        }
+        return result;
+    }
+
+    /** Record in _partsLo[DEPTH] and _partsHi[DEPTH] the regions of BOARD
+     *  within the squares LO, HI that hold queens of OWNER, set _usable
+     *  to their total number of empty squares, and return their number.
+     *  Region numbers change as moves are made and undone, so the
+     *  regions are copied. */
+    private int parts(Board board, long lo, long hi, Piece owner,
+                      int depth) {
+        long queensLo = board.bitsLo(owner), queensHi = board.bitsHi(owner);
+        long emptyLo = board.bitsLo(EMPTY), emptyHi = board.bitsHi(EMPTY);
+        int n;
+        n = _usable = 0;
+        for (int k = 0; k < board.regionCount(); k += 1) {
+            long rLo = board.regionLo(k), rHi = board.regionHi(k);
+            if (((rLo & lo) | (rHi & hi)) != 0
+                && ((rLo & queensLo) | (rHi & queensHi)) != 0) {
+                _partsLo[depth][n] = rLo;
+                _partsHi[depth][n] = rHi;
+                _usable += Bitboard.count(rLo & emptyLo, rHi & emptyHi);
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return the slot of my cache for the region LO, HI with queens on
+     *  QLO, QHI. */
+    private int slot(long lo, long hi, long qLo, long qHi) {
+        long h = (lo * MIX_1) ^ (hi * MIX_2) ^ (qLo * MIX_3) ^ (qHi * MIX_4);
+        return (int) (h >>> Integer.SIZE) & _mask;
+    }
+
+    /** Largest budget recorded in the cache for a failed search. */
+    private static final long MAX_BUDGET = Integer.MAX_VALUE;
+
+    /** Odd multipliers that mix the words of a key. */
+    private static final long MIX_1 = 0x9E3779B97F4A7C15L,
+        MIX_2 = 0xC2B2AE3D27D4EB4FL, MIX_3 = 0x165667B19E3779F9L,
+        MIX_4 = 0xD6E8FEB86659FD93L;
+
+    /** Keys of the cached regions: their squares and queens. */
+    private final long[] _keyLo, _keyHi, _queensLo, _queensHi;
+    /** Values of the cached regions, or minus the budget that proved too
+     *  small to solve them. */
+    private final int[] _values;
+    /** Mask selecting a slot from a mixed key. */
+    private final int _mask;
+
+    /** Tablebase consulted before searching, or null. */
+    private Tablebase _tablebase;
+
+    /** Regions found by parts, for each search depth. */
+    private final long[][] _partsLo = new long[Bitboard.SQUARES + 1][],
+        _partsHi = new long[Bitboard.SQUARES + 1][];
+
+    {
+        for (int d = 0; d < _partsLo.length; d += 1) {
+            _partsLo[d] = new long[Bitboard.SQUARES];
+            _partsHi[d] = new long[Bitboard.SQUARES];
+        }
+    }
+
+    /** Number of empty squares in the regions found by the last call to
+     *  parts. */
+    private int _usable;
+
+    /** Moves searched, and the most that may be searched, in the current
+     *  or last search. */
+    private long _nodes, _budget;
+}
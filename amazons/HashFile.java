@@ -0,0 +1,174 @@
+package amazons;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/** A read-only table from long keys (typically Zobrist hashes of
+ *  positions) to int values, kept in a file and memory-mapped, so that
+ *  opening one costs nothing until its entries are used, and the
+ *  operating system shares its pages among processes.  The file holds a
+ *  header (MAGIC and the number of entries), then the keys in ascending
+ *  order, then the values in the same order, all big-endian.  Keys are
+ *  found by binary search.  Files are written under a temporary name and
+ *  then renamed, so that a file that exists is complete.  A HashFile may
+ *  be used by any number of threads at once.
+ *  @author Ruochen Liu
+ */
+final class HashFile {
+
+    /** A table read from the file named NAME. */
+    HashFile(String name) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(name, "r");
+             FileChannel channel = file.getChannel()) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException(name + ": not a hash file");
+            }
+            _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        if (_buffer.getLong(0) != MAGIC) {
+            throw new IOException(name + ": not a hash file");
+        }
+        _size = _buffer.getInt(Long.BYTES);
+        if (_size < 0
+            || HEADER_BYTES + (long) _size * ENTRY_BYTES != _buffer.limit()) {
+            throw new IOException(name + ": truncated hash file");
+        }
+    }
+
+    /** Return the number of entries in my table. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the Kth smallest key in my table. */
+    long key(int k) {
+        return _buffer.getLong(HEADER_BYTES + k * Long.BYTES);
+    }
+
+    /** Return the value of key(K). */
+    int value(int k) {
+        return _buffer.getInt(HEADER_BYTES + _size * Long.BYTES
+                              + k * Integer.BYTES);
+    }
+
+    /** Return the value of KEY in my table, or ABSENT if it has none. */
+    int get(long key, int absent) {
+        int lo, hi;
+        lo = 0;
+        hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long probe = key(mid);
+            if (probe < key) {
+                lo = mid + 1;
+            } else if (probe > key) {
+                hi = mid - 1;
+            } else {
+                return value(mid);
+            }
+        }
+        return absent;
+    }
+
+    /** Write the table from KEYS[k] to VALUES[k], for k < N, to the file
+     *  named NAME, replacing it.  The first N entries of KEYS and VALUES
+     *  are sorted by key in the process.  The keys must be distinct. */
+    static void write(String name, long[] keys, int[] values, int n)
+        throws IOException {
+        sort(keys, values, 0, n - 1);
+        for (int k = 1; k < n; k += 1) {
+            if (keys[k - 1] == keys[k]) {
+                throw Utils.error("duplicate key in hash file: %x", keys[k]);
+            }
+        }
+        String temporary = name + TEMPORARY_SUFFIX;
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream
+                                  (new FileOutputStream(temporary)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(n);
+            for (int k = 0; k < n; k += 1) {
+                out.writeLong(keys[k]);
+            }
+            for (int k = 0; k < n; k += 1) {
+                out.writeInt(values[k]);
+            }
+        }
+        Files.move(Paths.get(temporary), Paths.get(name), ATOMIC_MOVE);
+    }
+
+    /** Sort KEYS[LO .. HI] into ascending order, moving the VALUES at
+     *  the same indices with them. */
+    private static void sort(long[] keys, int[] values, int lo, int hi) {
+        while (hi - lo >= INSERTION_SORT_SIZE) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i, j;
+            i = lo;
+            j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i += 1;
+                }
+                while (keys[j] > pivot) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    swap(keys, values, i, j);
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(keys, values, lo, j);
+                lo = i;
+            } else {
+                sort(keys, values, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i += 1) {
+            for (int j = i; j > lo && keys[j - 1] > keys[j]; j -= 1) {
+                swap(keys, values, j - 1, j);
+            }
+        }
+    }
+
+    /** Exchange entries I and J of KEYS and of VALUES. */
+    private static void swap(long[] keys, int[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /** First word of every hash file. */
+    private static final long MAGIC = 0x61B_A3A2_0B00CL;
+
+    /** Bytes in the header, and in each entry. */
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES,
+        ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+
+    /** Suffix of the name under which a file is written. */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /** Size of the ranges that sort finishes by insertion. */
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    /** The contents of my file. */
+    private final MappedByteBuffer _buffer;
+
+    /** Number of entries in my table. */
+    private final int _size;
+}
@@ -0,0 +1,89 @@
+package amazons;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A histogram of non-negative values (typically times in nanoseconds),
+ *  for finding percentiles.  Values are counted in buckets whose width
+ *  grows with the values they hold: each power of two is divided into
+ *  SUB_BUCKETS equal buckets, so that percentiles are found to within
+ *  1 / SUB_BUCKETS of their value in constant space.  The largest value
+ *  is kept exactly.  A Histogram may be updated and read by any number
+ *  of threads at once, without locking.
+ *  @author Ruochen Liu
+ */
+final class Histogram {
+
+    /** Count VALUE, which must be non-negative. */
+    void record(long value) {
+        if (value < 0) {
+            throw Utils.error("negative value in histogram: %d", value);
+        }
+        _counts.incrementAndGet(bucket(value));
+        _total.incrementAndGet();
+        _max.accumulateAndGet(value, Math::max);
+    }
+
+    /** Return the number of values counted. */
+    long count() {
+        return _total.get();
+    }
+
+    /** Return the largest value counted, or 0 if there are none. */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return (the least value in the bucket of) the smallest value
+     *  counted that is at least as great as the fraction Q of all values
+     *  counted, where 0 < Q <= 1, or 0 if there are none. */
+    long percentile(double q) {
+        long rank = (long) Math.ceil(q * count());
+        long seen;
+        seen = 0;
+        for (int k = 0; k < BUCKETS; k += 1) {
+            seen += _counts.get(k);
+            if (seen >= rank && seen > 0) {
+                return Math.min(least(k), max());
+            }
+        }
+        return max();
+    }
+
+    /** Return the index of the bucket holding VALUE. */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS
+            + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /** Return the least value in bucket K. */
+    private static long least(int k) {
+        if (k < SUB_BUCKETS) {
+            return k;
+        }
+        int shift = k / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + k % SUB_BUCKETS) << shift;
+    }
+
+    /** Base 2 logarithm of the number of buckets per power of two. */
+    private static final int SUB_BITS = 3;
+
+    /** Number of buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Number of buckets, enough for any long. */
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1)
+        * SUB_BUCKETS;
+
+    /** Number of values counted in each bucket. */
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+
+    /** Number of values counted, and the largest. */
+    private final AtomicLong _total = new AtomicLong(),
+        _max = new AtomicLong();
+}
@@ -0,0 +1,156 @@
+package amazons;
+
+import static amazons.Board.SIZE;
+import static amazons.Bitboard.SQUARES;
+
+/** Precomputed tables for sliding (queen) moves.  Each square lies on
+ *  four lines, one in each FAMILY: its rank, its file, its diagonal and
+ *  its anti-diagonal.  The occupancy of a line is a SIZE-bit mask with
+ *  bit k set iff the k-th square of the line is occupied; a Board keeps
+ *  these masks up to date (see Board.putAt), so the squares reachable
+ *  from a square along one line are a single lookup in SLIDE, and the
+ *  full set of queen destinations is four lookups.  Positions past the
+ *  end of a short line are always treated as occupied.
+ *  @author Ruochen Liu
+ */
+final class Lines {
+
+    /** Number of line families. */
+    static final int FAMILIES = 4;
+
+    /** Number of distinct line occupancy masks. */
+    static final int PATTERNS = 1 << SIZE;
+
+    /** Mask of all SIZE positions of a line. */
+    static final int FULL = PATTERNS - 1;
+
+    /** Return the number of lines in FAMILY. */
+    static int lineCount(int family) {
+        return LINE_SQUARES[family].length;
+    }
+
+    /** Return the line of FAMILY containing square index SQ. */
+    static int line(int family, int sq) {
+        return LINE[family][sq];
+    }
+
+    /** Return the position of square index SQ on its line of FAMILY. */
+    static int pos(int family, int sq) {
+        return POS[family][sq];
+    }
+
+    /** Return the occupancy mask of an empty line number LINE of
+     *  FAMILY, in which only the positions past its end are set. */
+    static int emptyLine(int family, int line) {
+        return FULL & ~((1 << LINE_SQUARES[family][line].length) - 1);
+    }
+
+    /** Return the mask of positions reachable by sliding from position
+     *  POS of a line whose occupancy is OCC.  The result excludes POS
+     *  itself and stops short of the first occupied position in each
+     *  direction. */
+    static int slide(int pos, int occ) {
+        return SLIDE[(pos << SIZE) | occ];
+    }
+
+    /** Return the low word of the bitboard of the squares at the positions
+     *  in MASK on line number LINE of FAMILY. */
+    static long expandLo(int family, int line, int mask) {
+        return EXPAND_LO[family][line][mask];
+    }
+
+    /** Return the high word of the bitboard of the squares at the
+     *  positions in MASK on line number LINE of FAMILY. */
+    static long expandHi(int family, int line, int mask) {
+        return EXPAND_HI[family][line][mask];
+    }
+
+    /** Number of queen-move directions. */
+    private static final int DIRECTIONS = 8;
+
+    /** The directions (as for Square.queenMove) in which the positions
+     *  of each family's lines increase: east, north, northeast and
+     *  southeast. */
+    private static final int[] STEP = { 2, 0, 1, 3 };
+
+    /** LINE[f][sq] is the line of family f through square sq. */
+    private static final int[][] LINE = new int[FAMILIES][SQUARES];
+
+    /** POS[f][sq] is the position of square sq on its line of family f. */
+    private static final int[][] POS = new int[FAMILIES][SQUARES];
+
+    /** LINE_SQUARES[f][l][k] is the index of the k-th square of line l of
+     *  family f. */
+    private static final int[][][] LINE_SQUARES = new int[FAMILIES][][];
+
+    /** SLIDE[(pos << SIZE) | occ] is the value of slide(pos, occ). */
+    private static final short[] SLIDE = new short[SIZE * PATTERNS];
+
+    /** EXPAND_LO[f][l][mask] and EXPAND_HI[f][l][mask] are the values of
+     *  expandLo(f, l, mask) and expandHi(f, l, mask). */
+    private static final long[][][] EXPAND_LO = new long[FAMILIES][][],
+        EXPAND_HI = new long[FAMILIES][][];
+
+    static {
+        for (int f = 0; f < FAMILIES; f += 1) {
+            int back = (STEP[f] + DIRECTIONS / 2) % DIRECTIONS;
+            int[][] lines = new int[2 * SIZE - 1][];
+            int n;
+            n = 0;
+            for (int sq = 0; sq < SQUARES; sq += 1) {
+                Square start = Square.sq(sq);
+                if (start.queenMove(back, 1) != null) {
+                    continue;
+                }
+                int len;
+                len = 1;
+                while (start.queenMove(STEP[f], len) != null) {
+                    len += 1;
+                }
+                lines[n] = new int[len];
+                for (int k = 0; k < len; k += 1) {
+                    int s = start.queenMove(STEP[f], k).index();
+                    lines[n][k] = s;
+                    LINE[f][s] = n;
+                    POS[f][s] = k;
+                }
+                n += 1;
+            }
+            LINE_SQUARES[f] = new int[n][];
+            EXPAND_LO[f] = new long[n][];
+            EXPAND_HI[f] = new long[n][];
+            for (int l = 0; l < n; l += 1) {
+                int[] squares = LINE_SQUARES[f][l] = lines[l];
+                EXPAND_LO[f][l] = new long[1 << squares.length];
+                EXPAND_HI[f][l] = new long[1 << squares.length];
+                for (int mask = 1; mask < 1 << squares.length; mask += 1) {
+                    int k = Integer.numberOfTrailingZeros(mask);
+                    int rest = mask & (mask - 1);
+                    EXPAND_LO[f][l][mask] = EXPAND_LO[f][l][rest]
+                        | Bitboard.loBit(squares[k]);
+                    EXPAND_HI[f][l][mask] = EXPAND_HI[f][l][rest]
+                        | Bitboard.hiBit(squares[k]);
+                }
+            }
+        }
+        for (int pos = 0; pos < SIZE; pos += 1) {
+            for (int occ = 0; occ < PATTERNS; occ += 1) {
+                int reach;
+                reach = 0;
+                for (int k = pos + 1; k < SIZE && (occ & (1 << k)) == 0;
+                     k += 1) {
+                    reach |= 1 << k;
+                }
+                for (int k = pos - 1; k >= 0 && (occ & (1 << k)) == 0;
+                     k -= 1) {
+                    reach |= 1 << k;
+                }
+                SLIDE[(pos << SIZE) | occ] = (short) reach;
+            }
+        }
+    }
+
+    /** Not instantiable. */
+    private Lines() {
+    }
+}
@@ -0,0 +1,552 @@
+package amazons;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static java.lang.Math.*;
+
+import static amazons.Piece.*;
+
+/** A Player that chooses moves by Monte Carlo tree search, using the UCT
+ *  rule to choose which branch of its tree to explore next.  Each
+ *  iteration walks from the root to a leaf, expands the leaf once it has
+ *  been visited often enough, and then plays a short random game from
+ *  there, scored by the territory evaluator (see Evaluator), crediting
+ *  the result to every node on the path.  The tree is kept in an arena
+ *  of parallel primitive arrays, the children of each node in one
+ *  contiguous block, so that it creates no objects per node.  With more
+ *  than one thread (see setThreads), all threads share the tree: each
+ *  visit is counted on the way down, before its result is known (a
+ *  "virtual loss"), so that threads spread out over different branches;
+ *  only walks of the tree and updates to it are locked, while the moves
+ *  of a node being expanded are generated, and playouts run, in
+ *  parallel.  The
+ *  subtree for the position after my move and my opponent's reply is
+ *  kept as the tree for my next move, moved to the front of the arena.
+ *  @author Ruochen Liu
+ */
+class MCTS extends Player {
+
+    /** Default size of the tree, in nodes. */
+    static final int DEFAULT_CAPACITY = 1 << 21;
+
+    /** A new MCTS player with no piece or controller (intended to
+     *  produce a template). */
+    MCTS() {
+        this(null, null);
+    }
+
+    /** A new MCTS player playing PIECE under control of CONTROLLER. */
+    MCTS(Piece piece, Controller controller) {
+        super(piece, controller);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        MCTS result = new MCTS(piece, controller);
+        result._threads = _threads;
+        result._capacity = _capacity;
+        return result;
+    }
+
+    /** Search with THREADS threads in players created from me. */
+    void setThreads(int threads) {
+        if (threads <= 0) {
+            throw Utils.error("thread count must be positive");
+        }
+        _threads = threads;
+    }
+
+    /** Keep trees of at most NODES nodes in players created from me. */
+    void setCapacity(int nodes) {
+        if (nodes <= 1) {
+            throw Utils.error("tree must hold more than one node");
+        }
+        _capacity = nodes;
+    }
+
+    @Override
+    String myMove() {
+        Move move = Move.mv(findMove());
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    /** Return a one-line summary of my last search: the playouts made by
+     *  all threads, the rate, and the size of the tree. */
+    String searchSummary() {
+        long micros = max(1, _lastNanos / NANOS_PER_MICRO);
+        return String.format("%d playouts in %d ms (%d kpps), %d threads,"
+                             + " %d nodes", _lastPlayouts,
+                             micros / MICROS_PER_MILLI,
+                             _lastPlayouts * MICROS_PER_MILLI / micros,
+                             _threads, _size);
+    }
+
+    @Override
+    String searchStats() {
+        return _lastNanos == 0 ? null
+            : searchSummary() + String.format("%n");
+    }
+
+    /** Return the number of nodes in my tree. */
+    int treeSize() {
+        return _size;
+    }
+
+    /** Return my move, packed as by Move.pack, from the current
+     *  position, assuming there is one: the most visited child of the
+     *  root after searching until my time is up. */
+    int findMove() {
+        long start = System.nanoTime();
+        if (_move == null) {
+            allocate();
+        }
+        setRoot(board());
+        _deadline = start + moveTime();
+        Worker[] workers = new Worker[_threads];
+        Future<?>[] running = new Future<?>[_threads - 1];
+        for (int k = 0; k < workers.length; k += 1) {
+            workers[k] = new Worker(k);
+        }
+        for (int k = 0; k < running.length; k += 1) {
+            running[k] = AI.HELPER_POOL.submit(workers[k + 1]);
+        }
+        workers[0].run();
+        long playouts = workers[0]._playouts;
+        for (int k = 0; k < running.length; k += 1) {
+            try {
+                running[k].get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException("search thread failed: "
+                                                + excp.getMessage());
+            }
+            playouts += workers[k + 1]._playouts;
+        }
+        _lastPlayouts = playouts;
+        _lastNanos = System.nanoTime() - start;
+
+        int best = -1;
+        for (int c = _firstChild[_root];
+             c >= 0 && c < _firstChild[_root] + _childCount[_root]; c += 1) {
+            if (best < 0 || _visits[c] > _visits[best]) {
+                best = c;
+            }
+        }
+        if (best < 0) {
+            MoveList moves = new MoveList();
+            board().generateMoves(_myPiece, moves);
+            return moves.get(0);
+        }
+        return _move[best];
+    }
+
+    /** Return the time to spend on my next move, in nanoseconds. */
+    private long moveTime() {
+        Clock clock = _controller.clock();
+        if (!clock.timed()) {
+            return MOVE_TIME.toNanos();
+        }
+        return clock.moveTime(_myPiece,
+                              (_evaluator.contested(board()) + 1) / 2);
+    }
+
+    /** Create the arrays of my tree. */
+    private void allocate() {
+        _move = new int[_capacity];
+        _firstChild = new int[_capacity];
+        _childCount = new int[_capacity];
+        _visits = new int[_capacity];
+        _wins = new double[_capacity];
+    }
+
+    /** Make the root of my tree BOARD: the node reached from the current
+     *  root by the moves made on BOARD since its position, if there are
+     *  at most two and the node is in the tree, with the rest of the tree
+     *  discarded (see compact), and otherwise a new, empty tree.  Return
+     *  true iff part of my old tree was kept. */
+    boolean setRoot(Board board) {
+        int n = board.numMoves();
+        if (_rootBoard != null && _rootMoves <= n
+            && n <= _rootMoves + REUSED_PLIES) {
+            Board expected = new Board(_rootBoard);
+            int node = _root;
+            for (int k = _rootMoves; k < n && node >= 0; k += 1) {
+                node = child(node, board.moveAt(k));
+                expected.makeMove(board.moveAt(k));
+            }
+            if (node >= 0 && expected.hash() == board.hash()) {
+                compact(node);
+                _rootBoard = new Board(board);
+                _rootMoves = n;
+                return true;
+            }
+        }
+        _size = 0;
+        _root = newNode(Move.NONE);
+        _rootBoard = new Board(board);
+        _rootMoves = n;
+        return false;
+    }
+
+    /** Make the subtree under NODE, a descendant of my root, my whole
+     *  tree, moved to the front of the arena with NODE at index 0, so
+     *  that the space of the rest is free again.  The blocks of children
+     *  are moved in the order in which they lie in the arena, each to
+     *  the first free index, which is never past where it was, so that
+     *  no block is overwritten before it has been moved. */
+    private void compact(int node) {
+        int blocks;
+        blocks = 0;
+        if (_firstChild[node] >= 0 && _childCount[node] > 0) {
+            blocks = addBlock(node, blocks);
+        }
+        for (int b = 0; b < blocks; b += 1) {
+            int start = (int) (_blocks[b] >>> Integer.SIZE),
+                end = start + (int) _blocks[b];
+            for (int c = start; c < end; c += 1) {
+                if (_firstChild[c] >= 0 && _childCount[c] > 0) {
+                    blocks = addBlock(c, blocks);
+                }
+            }
+        }
+        Arrays.sort(_blocks, 0, blocks);
+        moveNodes(node, 0, 1);
+        int free = 1;
+        for (int b = 0; b < blocks; b += 1) {
+            long start = _blocks[b] >>> Integer.SIZE;
+            int count = (int) _blocks[b];
+            moveNodes((int) start, free, count);
+            _blocks[b] = start << Integer.SIZE | free;
+            free += count;
+        }
+        for (int k = 0; k < free; k += 1) {
+            if (_childCount[k] == 0) {
+                _firstChild[k] = min(_firstChild[k], 0);
+            } else if (_firstChild[k] >= 0) {
+                long key = (long) _firstChild[k] << Integer.SIZE;
+                /* No entry equals KEY, since new indices are positive,
+                 * so the search returns where the block's entry is. */
+                int b = -Arrays.binarySearch(_blocks, 0, blocks, key) - 1;
+                _firstChild[k] = (int) _blocks[b];
+            }
+        }
+        _root = 0;
+        _size = free;
+    }
+
+    /** Add the block of children of NODE to the first BLOCKS entries of
+     *  _blocks, growing it if need be, and return the new number of
+     *  entries. */
+    private int addBlock(int node, int blocks) {
+        if (blocks == _blocks.length) {
+            _blocks = Arrays.copyOf(_blocks, 2 * blocks);
+        }
+        _blocks[blocks] =
+            (long) _firstChild[node] << Integer.SIZE | _childCount[node];
+        return blocks + 1;
+    }
+
+    /** Move the COUNT nodes starting at index FROM in the arena to the
+     *  indices starting at TO. */
+    private void moveNodes(int from, int to, int count) {
+        System.arraycopy(_move, from, _move, to, count);
+        System.arraycopy(_firstChild, from, _firstChild, to, count);
+        System.arraycopy(_childCount, from, _childCount, to, count);
+        System.arraycopy(_visits, from, _visits, to, count);
+        System.arraycopy(_wins, from, _wins, to, count);
+    }
+
+    /** Return the child of NODE reached by packed move MOVE, or -1 if
+     *  NODE has not been expanded. */
+    private int child(int node, int move) {
+        for (int c = _firstChild[node];
+             c >= 0 && c < _firstChild[node] + _childCount[node]; c += 1) {
+            if (_move[c] == move) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** Add an unexpanded node reached by packed move MOVE to my tree, and
+     *  return its index. */
+    private int newNode(int move) {
+        int node = _size;
+        _size += 1;
+        _move[node] = move;
+        _firstChild[node] = UNEXPANDED;
+        _childCount[node] = 0;
+        _visits[node] = 0;
+        _wins[node] = 0;
+        return node;
+    }
+
+    /** One thread's share of a search: repeated iterations on its own
+     *  copy of the root position until the deadline. */
+    private class Worker implements Runnable {
+
+        /** A worker numbered K (which seeds its random numbers). */
+        Worker(int k) {
+            _board = new Board(_rootBoard);
+            _random = new SplittableRandom(_rootBoard.hash() + k);
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < _deadline) {
+                iterate();
+                _playouts += 1;
+            }
+        }
+
+        /** Select a path from the root to a leaf, expanding the leaf if
+         *  it has been visited often enough, play out the game from
+         *  there, and record the result along the path.  A leaf to be
+         *  expanded is claimed under the lock, so that no other thread
+         *  expands it, and its moves are generated outside it. */
+        private void iterate() {
+            int depth;
+            depth = 0;
+            int leaf;
+            synchronized (MCTS.this) {
+                int node = _root;
+                _path[0] = node;
+                _visits[node] += 1;
+                while (_firstChild[node] >= 0 && _childCount[node] > 0) {
+                    node = select(node);
+                    depth = descend(node, depth);
+                }
+                leaf = -1;
+                if (_firstChild[node] == UNEXPANDED
+                    && (_visits[node] >= EXPAND_VISITS || node == _root)) {
+                    _firstChild[node] = EXPANDING;
+                    leaf = node;
+                }
+            }
+            if (leaf >= 0) {
+                int n = shuffledMoves();
+                synchronized (MCTS.this) {
+                    if (expand(leaf, n) && n > 0) {
+                        depth = descend(select(leaf), depth);
+                    }
+                }
+            }
+            double white = playout();
+            double rootWins =
+                _rootBoard.turn() == WHITE ? white : 1.0 - white;
+            synchronized (MCTS.this) {
+                for (int i = 1; i <= depth; i += 1) {
+                    _wins[_path[i]] += i % 2 == 1 ? rootWins : 1.0 - rootWins;
+                }
+            }
+            for (; depth > 0; depth -= 1) {
+                _board.undo();
+            }
+        }
+
+        /** Visit NODE, the child of the last node on my path, which is
+         *  DEPTH long: count the visit, make its move on my board, and add
+         *  it to my path.  Return the new length of my path. */
+        private int descend(int node, int depth) {
+            _visits[node] += 1;
+            _board.makeMove(_move[node]);
+            _path[depth + 1] = node;
+            return depth + 1;
+        }
+
+        /** Generate the legal moves on my board into _moves, in random
+         *  order, and return their number. */
+        private int shuffledMoves() {
+            _moves.clear();
+            int n = _board.generateMoves(_board.turn(), _moves);
+            for (int k = n - 1; k > 0; k -= 1) {
+                _moves.swap(k, _random.nextInt(k + 1));
+            }
+            return n;
+        }
+
+        /** Give LEAF, which I have claimed for expansion, a child for each
+         *  of the N moves in _moves, unless the tree has no room for
+         *  them, in which case LEAF is left unexpanded.  Return true iff
+         *  LEAF was expanded.  A node with no children is then a
+         *  finished game. */
+        private boolean expand(int leaf, int n) {
+            if (_size + n > _capacity) {
+                _firstChild[leaf] = UNEXPANDED;
+                return false;
+            }
+            _firstChild[leaf] = _size;
+            _childCount[leaf] = n;
+            for (int k = 0; k < n; k += 1) {
+                newNode(_moves.get(k));
+            }
+            return true;
+        }
+
+        /** Return the child of NODE with the highest UCT value: the
+         *  first unvisited one, if any. */
+        private int select(int node) {
+            double logVisits = log(_visits[node]);
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            int end = _firstChild[node] + _childCount[node];
+            for (int c = _firstChild[node]; c < end; c += 1) {
+                int visits = _visits[c];
+                if (visits == 0) {
+                    return c;
+                }
+                double value = _wins[c] / visits
+                    + EXPLORATION * sqrt(logVisits / visits);
+                if (value > bestValue) {
+                    best = c;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        /** Play up to PLAYOUT_MOVES random moves on my board, and return
+         *  white's share of a win: 1 or 0 if the game is over, and
+         *  otherwise a logistic function of the evaluator's score.  Leaves
+         *  my board as it was. */
+        private double playout() {
+            int made;
+            made = 0;
+            Piece winner;
+            while ((winner = _board.winner()) == null
+                   && made < PLAYOUT_MOVES) {
+                _board.makeMove(randomMove());
+                made += 1;
+            }
+            double result;
+            if (winner == null) {
+                result = 1.0 / (1.0 + exp(-(double) _evaluator.score(_board)
+                                          / SCORE_SCALE));
+            } else {
+                result = winner == WHITE ? 1.0 : 0.0;
+            }
+            for (; made > 0; made -= 1) {
+                _board.undo();
+            }
+            return result;
+        }
+
+        /** Return a random legal move on my board, packed as by
+         *  Move.pack, assuming there is one: a random destination for a
+         *  random queen that can move, and a random spear throw from
+         *  there. */
+        private int randomMove() {
+            Piece side = _board.turn();
+            long queensLo = _board.bitsLo(side), queensHi = _board.bitsHi(side);
+            int queens = Bitboard.count(queensLo, queensHi);
+            int first = _random.nextInt(queens);
+            for (int k = 0; k < queens; k += 1) {
+                int from = Bitboard.nth(queensLo, queensHi,
+                                        (first + k) % queens);
+                long lo = _board.reachLo(from, -1),
+                    hi = _board.reachHi(from, -1);
+                int n = Bitboard.count(lo, hi);
+                if (n == 0) {
+                    continue;
+                }
+                int to = Bitboard.nth(lo, hi, _random.nextInt(n));
+                lo = _board.reachLo(to, from);
+                hi = _board.reachHi(to, from);
+                int spear = Bitboard.nth(lo, hi, _random.nextInt(
+                                             Bitboard.count(lo, hi)));
+                return Move.pack(from, to, spear);
+            }
+            throw new IllegalStateException("no legal move");
+        }
+
+        /** My copy of the root position. */
+        private final Board _board;
+        /** Source of my random choices. */
+        private final SplittableRandom _random;
+        /** Buffer for expansions. */
+        private final MoveList _moves = new MoveList();
+        /** Evaluator for the ends of playouts. */
+        private final Evaluator _evaluator = new Evaluator();
+        /** The nodes on the path from the root in the current iteration. */
+        private final int[] _path = new int[Bitboard.SQUARES + 1];
+        /** Number of iterations I have completed. */
+        private long _playouts;
+    }
+
+    /** Values of _firstChild for a node that has not been expanded, and
+     *  for one that a thread is expanding. */
+    private static final int UNEXPANDED = -1, EXPANDING = -2;
+
+    /** Most moves since the position at the root of my tree after which
+     *  a subtree of it is kept for a new root. */
+    private static final int REUSED_PLIES = 2;
+
+    /** Initial length of _blocks. */
+    private static final int INITIAL_BLOCKS = 1024;
+
+    /** Time per move in an untimed game (as for AI). */
+    private static final Duration MOVE_TIME = Duration.ofNanos(1100000000);
+
+    /** Number of visits a node other than the root needs before it is
+     *  expanded. */
+    private static final int EXPAND_VISITS = 4;
+
+    /** Weight of the exploration term of the UCT value. */
+    private static final double EXPLORATION = 0.5;
+
+    /** Greatest number of random moves in a playout. */
+    private static final int PLAYOUT_MOVES = 6;
+
+    /** Evaluator score at which a position counts as about three
+     *  quarters won. */
+    private static final double SCORE_SCALE = 24;
+
+    /** Units for searchSummary. */
+    private static final long NANOS_PER_MICRO = 1000, MICROS_PER_MILLI = 1000;
+
+    /** Number of threads to search with. */
+    private int _threads = 1;
+
+    /** Greatest number of nodes in my tree. */
+    private int _capacity = DEFAULT_CAPACITY;
+
+    /** The arena: for each node, the move (packed) that reaches it, the
+     *  index of its first child (or UNEXPANDED or EXPANDING), its number
+     *  of children, the number of iterations that have passed through it,
+     *  and the wins (counting partial results from the evaluator) among
+     *  those for the side that made its move.
+     *  Allocated on my first search. */
+    private int[] _move, _firstChild, _childCount, _visits;
+    /** See _move. */
+    private double[] _wins;
+
+    /** The blocks of children kept by compact: for each, the index of
+     *  its first node in the high 32 bits, and in the low, its number of
+     *  nodes and then its new index. */
+    private long[] _blocks = new long[INITIAL_BLOCKS];
+
+    /** Number of nodes in use. */
+    private int _size;
+
+    /** Index of the root. */
+    private int _root;
+
+    /** Position at the root, and the number of moves made in the game
+     *  before it. */
+    private Board _rootBoard;
+    /** See _rootBoard. */
+    private int _rootMoves;
+
+    /** Value of System.nanoTime() at which the current search ends. */
+    private volatile long _deadline;
+
+    /** Evaluator used to budget time. */
+    private final Evaluator _evaluator = new Evaluator();
+
+    /** Statistics for my last search: playouts and elapsed time. */
+    private long _lastPlayouts, _lastNanos;
+}
@@ -19,13 +19,71 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --log={0,1} --={0,2}", args);
-        if (!options.ok()) {
+            new CommandArgs("--display --log={0,1} --hash=(\\d+){0,1}"
+                            + " --threads=(\\d+){0,1} --split --ponder"
+                            + " --book={0,1} --make-book={0,1}"
+                            + " --tablebase={0,1} --make-tablebase={0,1}"
+                            + " --tournament=(\\d+){0,1} --first={0,1}"
+                            + " --second={0,1} --concurrency=(\\d+){0,1}"
+                            + " --time={0,1} --sprt={0,1} --bench"
+                            + " --nodes=(\\d+){0,1} --depth=(\\d+){0,1}"
+                            + " --={0,2}", args);
+        if (!options.ok()
+            || options.contains("--nodes") && options.contains("--depth")) {
             System.err.println("Usage: java amazons.Main [--display]"
-                               + " [--log=FILE] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--hash=MB] [--threads=N]"
+                               + " [--split] [--ponder] [--book=FILE]"
+                               + " [--make-book=FILE] [--tablebase=DIR]"
+                               + " [--make-tablebase=DIR]"
+                               + " [INPUT [OUTPUT]]");
+            System.err.println("       java amazons.Main --tournament=GAMES"
+                               + " [--first=ENGINE] [--second=ENGINE]"
+                               + " [--concurrency=N] [--time=SECS+SECS]"
+                               + " [--sprt=ELO0,ELO1]");
+            System.err.println("       java amazons.Main --bench"
+                               + " [--nodes=N | --depth=D] [--hash=MB]"
+                               + " [--split]");
             System.exit(1);
         }
 
+        if (options.contains("--make-book")) {
+            try {
+                makeBook(options);
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+        if (options.contains("--make-tablebase")) {
+            try {
+                makeTablebase(options);
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+        if (options.contains("--tournament")) {
+            try {
+                tournament(options).run(System.out);
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+
+        if (options.contains("--bench")) {
+            try {
+                bench(options).run(System.out);
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -41,7 +99,13 @@ public class Main {
             }
         }
 
-        Controller control = getController(options);
+        Controller control = null;
+        try {
+            control = getController(options);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
         System.out.println("Amazons 61B, version 1.0");
 
         try {
@@ -83,6 +147,192 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer, new AI());
+        AI ai = getAI(options);
+        if (options.contains("--book")) {
+            try {
+                ai.setBook(new Book(options.getFirst("--book")));
+            } catch (IOException excp) {
+                throw error("Could not open book: %s", excp.getMessage());
+            }
+        }
+        if (options.contains("--tablebase")) {
+            try {
+                ai.setTablebase(new Tablebase(options.getFirst("--tablebase")));
+            } catch (IOException excp) {
+                throw error("Could not open tablebase: %s",
+                            excp.getMessage());
+            }
+        }
+        MCTS mcts = new MCTS();
+        if (options.contains("--threads")) {
+            mcts.setThreads(Integer.parseInt(options.getFirst("--threads")));
+        }
+
+        Controller controller =
+            new Controller(view, log, reporter, manualPlayer, ai);
+        controller.addAutoPlayer("mcts", mcts);
+        return controller;
+    }
+
+    /** Return a template AI configured as indicated by OPTIONS. */
+    private static AI getAI(CommandArgs options) {
+        AI ai = new AI();
+        if (options.contains("--hash")) {
+            ai.setHashSize(Integer.parseInt(options.getFirst("--hash")));
+        }
+        if (options.contains("--threads")) {
+            ai.setThreads(Integer.parseInt(options.getFirst("--threads")));
+        }
+        ai.setSplitPly(options.contains("--split"));
+        ai.setPonder(options.contains("--ponder"));
+        return ai;
+    }
+
+    /** Build an opening book, as indicated by OPTIONS, in the file named
+     *  by its --make-book option, searching as many positions at once as
+     *  its --threads option gives. */
+    private static void makeBook(CommandArgs options) {
+        int workers = options.contains("--threads")
+            ? Integer.parseInt(options.getFirst("--threads")) : 1;
+        String name = options.getFirst("--make-book");
+        try {
+            int size = new BookBuilder(getAI(options), workers).build(name);
+            System.out.printf("Wrote %d positions to %s%n", size, name);
+        } catch (IOException excp) {
+            System.err.printf("Could not write book: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Build the tablebase in the directory named by the
+     *  --make-tablebase option of OPTIONS, or the part of it that is
+     *  missing, solving with as many threads as its --threads option
+     *  gives. */
+    private static void makeTablebase(CommandArgs options) {
+        int workers = options.contains("--threads")
+            ? Integer.parseInt(options.getFirst("--threads")) : 1;
+        String dir = options.getFirst("--make-tablebase");
+        try {
+            long solved = new TablebaseBuilder(workers).build(dir);
+            System.out.printf("Solved %d regions; %d in %s%n", solved,
+                              new Tablebase(dir).size(), dir);
+        } catch (IOException excp) {
+            System.err.printf("Could not write tablebase: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the benchmark described by OPTIONS: searches by the AI
+     *  its options describe, limited to the number of nodes given by
+     *  its --nodes option or the depth given by its --depth option (by
+     *  default, Bench.DEFAULT_DEPTH moves). */
+    private static Bench bench(CommandArgs options) {
+        Bench result = new Bench(getAI(options));
+        if (options.contains("--nodes")) {
+            result.setNodes(Long.parseLong(options.getFirst("--nodes")));
+        } else if (options.contains("--depth")) {
+            result.setDepth(Integer.parseInt(options.getFirst("--depth")));
+        }
+        return result;
+    }
+
+    /** Return the tournament described by OPTIONS: between the engines
+     *  given by its --first and --second options (see engine), by
+     *  default both "ai", playing the number of games given by its
+     *  --tournament option, as many at once as its --concurrency option
+     *  gives (by default, one per processor), with the time control
+     *  TOTAL+INCREMENT, in seconds, given by its --time option, and SPRT
+     *  hypotheses ELO0,ELO1 given by its --sprt option. */
+    private static Tournament tournament(CommandArgs options) {
+        int concurrency = options.contains("--concurrency")
+            ? Integer.parseInt(options.getFirst("--concurrency"))
+            : Runtime.getRuntime().availableProcessors();
+        String first = options.contains("--first")
+            ? options.getFirst("--first") : "ai";
+        String second = options.contains("--second")
+            ? options.getFirst("--second") : "ai";
+        Tournament result =
+            new Tournament(engine(first), engine(second),
+                           Integer.parseInt(options.getFirst("--tournament")),
+                           concurrency);
+        if (options.contains("--time")) {
+            double[] time = numbers(options.getFirst("--time"), "\\+");
+            result.setTime((long) (time[0] * NANOS_PER_SECOND),
+                           (long) (time[1] * NANOS_PER_SECOND));
+        }
+        if (options.contains("--sprt")) {
+            double[] elo = numbers(options.getFirst("--sprt"), ",");
+            result.setSprt(elo[0], elo[1]);
+        }
+        return result;
+    }
+
+    /** Return the two numbers in TEXT separated by SEPARATOR (a regular
+     *  expression). */
+    private static double[] numbers(String text, String separator) {
+        String[] words = text.split(separator);
+        try {
+            if (words.length == 2) {
+                return new double[] { Double.parseDouble(words[0]),
+                                      Double.parseDouble(words[1]) };
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error. */
+        }
+        throw error("expected two numbers: %s", text);
+    }
+
+    /** Return a template for the automated player described by SPEC,
+     *  which has the form NAME[:SETTING,...].  NAME is "ai" or "mcts".
+     *  The SETTINGs for "ai" are threads=N, hash=MB, split, ponder,
+     *  book=FILE and tablebase=DIR, as for the corresponding options, and
+     *  for "mcts", threads=N. */
+    private static Player engine(String spec) {
+        String[] parts = spec.split(":", 2);
+        String[] settings = parts.length > 1 ? parts[1].split(",")
+            : new String[0];
+        if (parts[0].equals("mcts")) {
+            MCTS mcts = new MCTS();
+            for (String setting : settings) {
+                if (setting.startsWith("threads=")) {
+                    mcts.setThreads(Integer.parseInt(setting.substring(8)));
+                } else {
+                    throw error("unknown mcts setting: %s", setting);
+                }
+            }
+            return mcts;
+        } else if (!parts[0].equals("ai")) {
+            throw error("unknown engine: %s", parts[0]);
+        }
+        AI ai = new AI();
+        for (String setting : settings) {
+            String[] pair = setting.split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            try {
+                if (pair[0].equals("threads")) {
+                    ai.setThreads(Integer.parseInt(value));
+                } else if (pair[0].equals("hash")) {
+                    ai.setHashSize(Integer.parseInt(value));
+                } else if (pair[0].equals("split")) {
+                    ai.setSplitPly(true);
+                } else if (pair[0].equals("ponder")) {
+                    ai.setPonder(true);
+                } else if (pair[0].equals("book")) {
+                    ai.setBook(new Book(value));
+                } else if (pair[0].equals("tablebase")) {
+                    ai.setTablebase(new Tablebase(value));
+                } else {
+                    throw error("unknown ai setting: %s", setting);
+                }
+            } catch (IOException excp) {
+                throw error("could not open %s", value);
+            }
+        }
+        return ai;
     }
+
+    /** Nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
 }
@@ -37,8 +37,51 @@ final class Move {
         return _spear;
     }
 
-    /** Return the unique Move FROM-TO(SPEAR). */
+    /** Return my packed form (see pack). */
+    int packed() {
+        return _packed;
+    }
+
+    /** Return FROM-TO(SPEAR), given as square indices, packed into an
+     *  int.  Since FROM and TO always differ in a real move, no packed
+     *  move is equal to NONE. */
+    static int pack(int from, int to, int spear) {
+        return from | (to << SQUARE_BITS) | (spear << (2 * SQUARE_BITS));
+    }
+
+    /** Return the index of the square moved from in packed move MOVE. */
+    static int packedFrom(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /** Return the index of the square moved to in packed move MOVE. */
+    static int packedTo(int move) {
+        return (move >>> SQUARE_BITS) & SQUARE_MASK;
+    }
+
+    /** Return the index of the spear's square in packed move MOVE. */
+    static int packedSpear(int move) {
+        return move >>> (2 * SQUARE_BITS);
+    }
+
+    /** Return the unique Move whose packed form is MOVE. */
+    static Move mv(int move) {
+        return mv(sq(packedFrom(move)), sq(packedTo(move)),
+                  sq(packedSpear(move)));
+    }
+
+    /** Return the unique Move FROM-TO(SPEAR).  A Move already created is
+     *  found without locking (a Move's fields are final, so a Move seen
+     *  by any thread is complete); creating one is synchronized, so
+     *  that Moves stay unique when created by several threads at once. */
     static Move mv(Square from, Square to, Square spear) {
+        Move result = MOVES[from.index()][to.index()][spear.index()];
+        return result != null ? result : create(from, to, spear);
+    }
+
+    /** Return the unique Move FROM-TO(SPEAR), creating it if need be. */
+    private static synchronized Move create(Square from, Square to,
+                                            Square spear) {
         if (MOVES[from.index()][to.index()][spear.index()] == null) {
             MOVES[from.index()][to.index()][spear.index()] =
                 new Move(from, to, spear);
@@ -50,12 +93,12 @@ final class Move {
      *  valid syntax in which the piece move and spear throw are proper
      *  queen moves, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            int k = _moveMatcher.group(1) != null ? 1 : 4;
-            Square from = sq(_moveMatcher.group(k)),
-                to = sq(_moveMatcher.group(k + 1)),
-                spear = sq(_moveMatcher.group(k + 2));
+        Matcher mat = MOVE_PATTERN.matcher(str);
+        if (mat.matches()) {
+            int k = mat.group(1) != null ? 1 : 4;
+            Square from = sq(mat.group(k)),
+                to = sq(mat.group(k + 1)),
+                spear = sq(mat.group(k + 2));
             if (from.isQueenMove(to) && to.isQueenMove(spear)) {
                 return mv(from, to, spear);
             }
@@ -66,8 +109,7 @@ final class Move {
     /** Return true iff STR has the right format for a Move, ignoring whether
      *  its piece-move and spear-throw are valid queen moves. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return MOVE_PATTERN.matcher(str).matches();
     }
 
     @Override
@@ -79,16 +121,26 @@ final class Move {
     private Move(Square from, Square to, Square spear) {
         _from = from; _to = to; _spear = spear;
         _str = String.format("%s-%s(%s)", from, to, spear);
+        _packed = pack(from.index(), to.index(), spear.index());
     }
 
+    /** A packed value that denotes no move. */
+    static final int NONE = 0;
+
+    /** Number of bits used for each square in a packed move. */
+    private static final int SQUARE_BITS = 7;
+
+    /** Mask of a square's bits in a packed move. */
+    private static final int SQUARE_MASK = (1 << SQUARE_BITS) - 1;
+
     /** The cache of all Moves created. */
     private static final Move[][][] MOVES = new Move[100][100][100];
 
     /** The components of a Move. */
     private final Square _from, _to, _spear;
     /** The printed form of a Move. */
-    private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
+    private final String _str;
+    /** The packed form of a Move. */
+    private final int _packed;
 }
 
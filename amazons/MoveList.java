@@ -0,0 +1,118 @@
+package amazons;
+
+import java.util.Arrays;
+
+/** A growable list of packed moves (see Move.pack), intended to be
+ *  allocated once and reused, so that move generation in the search does
+ *  not create objects.
+ *  @author Ruochen Liu
+ */
+final class MoveList {
+
+    /** An empty list with room for the moves of a typical position. */
+    MoveList() {
+        _moves = new int[INITIAL_CAPACITY];
+        _keys = new long[INITIAL_CAPACITY];
+    }
+
+    /** Return the number of moves in me. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the packed move at position K. */
+    int get(int k) {
+        return _moves[k];
+    }
+
+    /** Append packed move MOVE. */
+    void add(int move) {
+        if (_size == _moves.length) {
+            _moves = Arrays.copyOf(_moves, 2 * _moves.length);
+            _keys = Arrays.copyOf(_keys, 2 * _keys.length);
+        }
+        _moves[_size] = move;
+        _size += 1;
+    }
+
+    /** Exchange the moves at positions I and J. */
+    void swap(int i, int j) {
+        int tmp = _moves[i];
+        _moves[i] = _moves[j];
+        _moves[j] = tmp;
+        long key = _keys[i];
+        _keys[i] = _keys[j];
+        _keys[j] = key;
+    }
+
+    /** Return the position of packed move MOVE in me, or -1 if it is
+     *  absent. */
+    int indexOf(int move) {
+        for (int k = 0; k < _size; k += 1) {
+            if (_moves[k] == move) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Move packed move MOVE, if present at position START or later, to
+     *  position START.  Return true iff it was present. */
+    boolean promote(int move, int start) {
+        for (int k = start; k < _size; k += 1) {
+            if (_moves[k] == move) {
+                swap(start, k);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Give the move at position K the sort score SCORE for subsequent
+     *  calls to pickBest and sortByScore. */
+    void setScore(int k, int score) {
+        _keys[k] = ((long) -score << Integer.SIZE)
+            | (_moves[k] & MOVE_BITS);
+    }
+
+    /** Move the highest-scored (see setScore) of the moves at positions K
+     *  and later to position K.  Cheaper than sortByScore when only the
+     *  first few moves of a list are likely to be used. */
+    void pickBest(int k) {
+        int best = k;
+        for (int j = k + 1; j < _size; j += 1) {
+            if (_keys[j] < _keys[best]) {
+                best = j;
+            }
+        }
+        swap(k, best);
+    }
+
+    /** Sort the moves at positions START and later into decreasing order
+     *  of the scores last given them by setScore. */
+    void sortByScore(int start) {
+        Arrays.sort(_keys, start, _size);
+        for (int k = start; k < _size; k += 1) {
+            _moves[k] = (int) _keys[k];
+        }
+    }
+
+    /** Remove all moves. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Room for the 2176 moves of the initial position and then some. */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /** Mask of the bits of a sort key holding its move. */
+    private static final long MOVE_BITS = 0xFFFFFFFFL;
+
+    /** The moves, in positions 0 .. _size - 1. */
+    private int[] _moves;
+    /** Sort keys set by setScore: negated score in the high word, move in
+     *  the low word. */
+    private long[] _keys;
+    /** Number of moves. */
+    private int _size;
+}
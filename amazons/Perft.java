@@ -0,0 +1,170 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Performance tests ("perft") of move generation: counts of the
+ *  sequences of N legal moves from a position, as enumerated by
+ *  Board.legalMoves, so that a change to the move generator can be
+ *  checked against known counts and timed in one run.  The root moves
+ *  are counted in parallel, each by its own task on the common
+ *  ForkJoinPool with its own copy of the board.  Optionally, the counts
+ *  of subtrees are cached by position hash and depth in a table shared
+ *  by all the tasks, so that transpositions are counted once.  Each
+ *  entry is stored as its key XORed with its data, followed by its
+ *  data, so that an entry torn by two tasks writing it at once is never
+ *  mistaken for a valid one.  A Perft may be used by one thread at a
+ *  time.
+ *  @author Ruochen Liu
+ */
+final class Perft {
+
+    /** A Perft that caches no counts. */
+    Perft() {
+        this(0);
+    }
+
+    /** A Perft that caches counts in a table of at most MEGABYTES
+     *  megabytes (none if MEGABYTES is 0). */
+    Perft(int megabytes) {
+        if (megabytes < 0) {
+            throw Utils.error("cache size must be non-negative");
+        }
+        long entries = (long) megabytes * BYTES_PER_MEGABYTE / ENTRY_BYTES;
+        if (entries == 0) {
+            _cache = null;
+            _mask = 0;
+        } else {
+            int bits = Math.min(MAX_CACHE_BITS,
+                                Long.SIZE - 1
+                                - Long.numberOfLeadingZeros(entries));
+            _cache = new AtomicLongArray(2 << bits);
+            _mask = (1 << bits) - 1;
+        }
+    }
+
+    /** Return the number of sequences of DEPTH legal moves from BOARD
+     *  (1 if DEPTH is 0).  BOARD is not changed. */
+    long perft(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long result;
+        result = 0;
+        for (long count : divide(board, depth).values()) {
+            result += count;
+        }
+        return result;
+    }
+
+    /** Return the number of sequences of DEPTH legal moves from BOARD
+     *  that start with each of its legal moves, in the order in which
+     *  they are generated, where DEPTH > 0.  BOARD is not changed. */
+    LinkedHashMap<Move, Long> divide(Board board, int depth) {
+        if (depth <= 0) {
+            throw Utils.error("divide depth must be positive");
+        }
+        ArrayList<Move> moves = new ArrayList<>();
+        ArrayList<RecursiveTask<Long>> tasks = new ArrayList<>();
+        for (Iterator<Move> legal = board.legalMoves(); legal.hasNext();) {
+            Move move = legal.next();
+            Board copy = new Board(board);
+            moves.add(move);
+            tasks.add(new RecursiveTask<Long>() {
+                    @Override
+                    protected Long compute() {
+                        copy.makeMove(move);
+                        return count(copy, depth - 1);
+                    }
+                });
+        }
+        for (RecursiveTask<Long> task : tasks) {
+            task.fork();
+        }
+        LinkedHashMap<Move, Long> result = new LinkedHashMap<>();
+        for (int k = 0; k < moves.size(); k += 1) {
+            result.put(moves.get(k), tasks.get(k).join());
+        }
+        return result;
+    }
+
+    /** Return the number of sequences of DEPTH legal moves from BOARD,
+     *  which is restored before returning. */
+    private long count(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        boolean cached = _cache != null && depth >= MIN_CACHED_DEPTH;
+        long key = board.hash();
+        if (cached) {
+            long found = probe(key, depth);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        long result;
+        result = 0;
+        for (Iterator<Move> legal = board.legalMoves(); legal.hasNext();) {
+            Move move = legal.next();
+            if (depth == 1) {
+                result += 1;
+            } else {
+                board.makeMove(move);
+                result += count(board, depth - 1);
+                board.undo();
+            }
+        }
+        if (cached) {
+            store(key, depth, result);
+        }
+        return result;
+    }
+
+    /** Return the count cached for the position whose hash is KEY at
+     *  DEPTH, or -1 if there is none. */
+    private long probe(long key, int depth) {
+        int slot = 2 * (int) (key & _mask);
+        long data = _cache.get(slot + 1);
+        if ((_cache.get(slot) ^ data) == key
+            && (data & DEPTH_MASK) == depth) {
+            return data >>> DEPTH_BITS;
+        }
+        return -1;
+    }
+
+    /** Cache COUNT for the position whose hash is KEY at DEPTH. */
+    private void store(long key, int depth, long count) {
+        int slot = 2 * (int) (key & _mask);
+        long data = count << DEPTH_BITS | depth;
+        _cache.set(slot, key ^ data);
+        _cache.set(slot + 1, data);
+    }
+
+    /** Least depth whose counts are cached: counts of depth 1 cost little
+     *  more to compute than to look up. */
+    private static final int MIN_CACHED_DEPTH = 2;
+
+    /** Number of low-order bits of a cache entry's data that hold its
+     *  depth, and their mask. */
+    private static final int DEPTH_BITS = 8, DEPTH_MASK = (1 << DEPTH_BITS) - 1;
+
+    /** Bytes in a cache entry. */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** Bytes in a megabyte. */
+    private static final long BYTES_PER_MEGABYTE = 1 << 20;
+
+    /** Base 2 logarithm of the largest number of cache entries. */
+    private static final int MAX_CACHE_BITS = 28;
+
+    /** The cache of counts: pairs of (key ^ data, data), where data is a
+     *  count shifted left DEPTH_BITS bits, plus its depth; or null if
+     *  counts are not cached. */
+    private final AtomicLongArray _cache;
+
+    /** Mask of the bits of a key that select its entry. */
+    private final int _mask;
+}
@@ -36,6 +36,25 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Called when my opponent is about to choose its move, which it may
+     *  take some time over.  Players that can make use of that time (by
+     *  thinking ahead) may start doing so here, in the background, but
+     *  must not change the board.  Does nothing by default. */
+    void ponder() {
+    }
+
+    /** Called when my opponent has chosen its command, before it is
+     *  executed.  Stops and waits for whatever ponder started.  Does
+     *  nothing by default. */
+    void stopPondering() {
+    }
+
+    /** Return a report of my last search, for the stats command, or null
+     *  if I have none.  Returns null by default. */
+    String searchStats() {
+        return null;
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
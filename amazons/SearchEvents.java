@@ -0,0 +1,91 @@
+package amazons;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** The JDK Flight Recorder events recorded by AI searches, so that the
+ *  searches in any game can be profiled, with no change to the program,
+ *  by running it with -XX:StartFlightRecording (or starting a recording
+ *  with jcmd), and viewed with jfr print --categories Amazons or in JDK
+ *  Mission Control.  The thread and the duration of each event are
+ *  recorded with it.  Events cost next to nothing while no recording
+ *  is enabled for them.
+ *  @author Ruochen Liu
+ */
+final class SearchEvents {
+
+    /** The completion of an iteration of a search by one thread, from the
+     *  start of its first search to the end of its last (there may be
+     *  several, when the value falls outside the aspiration window). */
+    @Name("amazons.Iteration")
+    @Label("Search Iteration")
+    @Category({ "Amazons", "Search" })
+    @Description("An iteration of iterative deepening completed by one"
+                 + " search thread")
+    static final class Iteration extends Event {
+        /** The depth searched. */
+        @Label("Depth")
+        int depth;
+
+        /** The value found, for the side to move. */
+        @Label("Score")
+        int score;
+
+        /** The best move found. */
+        @Label("Move")
+        String move;
+
+        /** The nodes this thread has visited in the search so far. */
+        @Label("Nodes")
+        long nodes;
+
+        /** The beta cutoffs this thread has made in the search so far. */
+        @Label("Cutoffs")
+        long cutoffs;
+
+        /** The thread's place among those of the search: 0 for the main
+         *  thread, and k for helper k. */
+        @Label("Helper")
+        int helper;
+    }
+
+    /** The choice of a move by an AI in a game, from the start of its
+     *  turn. */
+    @Name("amazons.MoveSelected")
+    @Label("Move Selected")
+    @Category({ "Amazons", "Search" })
+    @Description("A move chosen by an AI player")
+    static final class MoveSelected extends Event {
+        /** The side that moves. */
+        @Label("Side")
+        String side;
+
+        /** The move chosen. */
+        @Label("Move")
+        String move;
+
+        /** Where the move came from: "search", "book" or "endgame". */
+        @Label("Source")
+        String source;
+
+        /** The deepest iteration completed by any thread, if the move
+         *  was searched. */
+        @Label("Depth")
+        int depth;
+
+        /** The nodes visited by all threads. */
+        @Label("Nodes")
+        long nodes;
+
+        /** The number of threads searching. */
+        @Label("Threads")
+        int threads;
+    }
+
+    /** Not instantiable. */
+    private SearchEvents() {
+    }
+}
@@ -0,0 +1,103 @@
+package amazons;
+
+import java.util.ArrayList;
+
+/** Statistics of one search by an AI, for the stats command: for each
+ *  iteration completed by the main thread, its value and move and the
+ *  nodes, cutoffs, transposition-table hits and time it took; and for
+ *  each thread (the main one, then its helpers), the deepest iteration
+ *  it completed and the nodes it visited.  The counts are kept by each
+ *  thread in plain fields of its own AI, which costs next to nothing,
+ *  and are copied here at the end of each iteration and of the search.
+ *  @author Ruochen Liu
+ */
+final class SearchStats {
+
+    /** Record the completion of iteration DEPTH, whose value for the side
+     *  to move was SCORE and whose move was MOVE (packed as by
+     *  Move.pack), when the search had visited NODES nodes, probed the
+     *  transposition table PROBES times, finding an entry HITS times, and
+     *  made CUTOFFS beta cutoffs, FIRSTCUTOFFS of them by the first move
+     *  searched, in NANOS nanoseconds. */
+    void addIteration(int depth, int score, int move, long nodes,
+                      long probes, long hits, long cutoffs,
+                      long firstCutoffs, long nanos) {
+        _iterations.add(new long[] {
+            depth, score, move, nodes, probes, hits, cutoffs, firstCutoffs,
+            nanos
+        });
+    }
+
+    /** Record that the next thread completed iterations up to DEPTH and
+     *  visited NODES nodes. */
+    void addThread(int depth, long nodes) {
+        _threads.add(new long[] { depth, nodes });
+    }
+
+    /** Return the number of iterations recorded. */
+    int iterations() {
+        return _iterations.size();
+    }
+
+    /** Return the number of threads recorded. */
+    int threads() {
+        return _threads.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        long[] last = new long[FIELDS];
+        for (long[] row : _iterations) {
+            long nodes = row[NODES] - last[NODES],
+                probes = row[PROBES] - last[PROBES],
+                cutoffs = row[CUTOFFS] - last[CUTOFFS];
+            result.append(String.format("depth %d: score %d, %s, %d nodes,"
+                                        + " %d ms, cutoffs %.1f%% (first"
+                                        + " move %.1f%%), hash hits"
+                                        + " %.1f%%%n",
+                                        row[DEPTH], row[SCORE],
+                                        Move.mv((int) row[MOVE]), nodes,
+                                        (row[NANOS] - last[NANOS])
+                                        / NANOS_PER_MILLI,
+                                        percent(cutoffs, probes),
+                                        percent(row[FIRST_CUTOFFS]
+                                                - last[FIRST_CUTOFFS],
+                                                cutoffs),
+                                        percent(row[HITS] - last[HITS],
+                                                probes)));
+            last = row;
+        }
+        for (int k = 0; k < _threads.size(); k += 1) {
+            long[] thread = _threads.get(k);
+            result.append(String.format("thread %d: depth %d, %d nodes%n",
+                                        k, thread[0], thread[1]));
+        }
+        return result.toString();
+    }
+
+    /** Return PART as a percentage of WHOLE, or 0 if WHOLE is 0. */
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : PERCENT * part / whole;
+    }
+
+    /** Indices of the fields of an iteration's record, and their
+     *  number. */
+    private static final int DEPTH = 0, SCORE = 1, MOVE = 2, NODES = 3,
+        PROBES = 4, HITS = 5, CUTOFFS = 6, FIRST_CUTOFFS = 7, NANOS = 8,
+        FIELDS = 9;
+
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** A whole, in percent. */
+    private static final double PERCENT = 100;
+
+    /** The records of the iterations completed, in order, each holding
+     *  the totals for the search up to its end, as given to
+     *  addIteration. */
+    private final ArrayList<long[]> _iterations = new ArrayList<>();
+
+    /** The records of the threads: depth and nodes. */
+    private final ArrayList<long[]> _threads = new ArrayList<>();
+}
@@ -70,30 +70,15 @@ final class Square {
      *  northwest. If DIR has another value, return null. Thus, unless the
      *  result is null the resulting square is a queen move away from me. */
     Square queenMove(int dir, int steps) {
-        int index;
         if (dir < 0 || dir > 7) {
             return null;
-        } else if (dir == 0) {
-            index = this._index + steps * 10;
-        } else if (dir == 1) {
-            index = this._index + steps + steps * 10;
-        } else if (dir == 2) {
-            index = this._index + steps;
-        } else if (dir == 3) {
-            index = this._index + steps - steps * 10;
-        } else if (dir == 4) {
-            index = this._index - steps * 10;
-        } else if (dir == 5) {
-            index = this._index - steps - steps * 10;
-        } else if (dir == 6) {
-            index = this._index - steps;
-        } else  {
-            index = this._index - steps + steps * 10;
         }
-        if (index >= 100 || index < 0 || !exists(index % 10, index / 10)) {
+        int col = _col + steps * DIR[dir][0],
+            row = _row + steps * DIR[dir][1];
+        if (!exists(col, row)) {
             return null;
         }
-        return SQUARES[index];
+        return SQUARES[row * Board.SIZE + col];
     }
 
     /** Return the direction (an int as defined in the documentation
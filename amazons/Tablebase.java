@@ -0,0 +1,112 @@
+package amazons;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static amazons.Board.SIZE;
+import static amazons.Piece.*;
+
+/** Tablebases of the values of single-owner regions (see FillSolver):
+ *  for each shape of region up to some number of squares, and each
+ *  placement of up to some number of queens in it, the number of moves
+ *  the queens can make in the region.  A region's value depends only on
+ *  its shape and queens, so each entry serves every translation,
+ *  reflection and rotation of its region, for either side: regions are
+ *  keyed by the least of the Zobrist hashes (see Zobrist) of their eight
+ *  reflections and rotations, moved to the corner of the board, with
+ *  white queens.  The table for regions of N squares is a HashFile named
+ *  fill-N in the tablebase directory, built from those for smaller
+ *  regions (see TablebaseBuilder).  A Tablebase may be used by any
+ *  number of threads at once.
+ *  @author Ruochen Liu
+ */
+final class Tablebase {
+
+    /** The tablebase in the directory named DIR: the tables for regions
+     *  of 1 to N squares, where the table for N + 1 is missing. */
+    Tablebase(String dir) throws IOException {
+        ArrayList<HashFile> tables = new ArrayList<>();
+        for (File file = file(dir, 1); file.exists();
+             file = file(dir, tables.size() + 1)) {
+            tables.add(new HashFile(file.getPath()));
+        }
+        _tables = tables.toArray(new HashFile[tables.size()]);
+    }
+
+    /** Return the number of squares of the largest regions in my
+     *  tables. */
+    int maxSquares() {
+        return _tables.length;
+    }
+
+    /** Return the number of entries in my tables. */
+    long size() {
+        long result;
+        result = 0;
+        for (HashFile table : _tables) {
+            result += table.size();
+        }
+        return result;
+    }
+
+    /** Return the number of moves the queens in the region LO, HI of
+     *  BOARD, which belong to one side, can make in it, or -1 if the
+     *  region is not in my tables. */
+    int value(Board board, long lo, long hi) {
+        int n = Bitboard.count(lo, hi);
+        if (n > _tables.length) {
+            return -1;
+        }
+        long queensLo = lo & (board.bitsLo(WHITE) | board.bitsLo(BLACK)),
+            queensHi = hi & (board.bitsHi(WHITE) | board.bitsHi(BLACK));
+        int queens = Bitboard.count(queensLo, queensHi);
+        if (queens == 0 || queens == n) {
+            return 0;
+        }
+        return _tables[n - 1].get(key(lo, hi, queensLo, queensHi), -1);
+    }
+
+    /** Return the file holding the table for regions of N squares in
+     *  the tablebase directory named DIR. */
+    static File file(String dir, int n) {
+        return new File(dir, "fill-" + n);
+    }
+
+    /** Return the key of the region LO, HI with queens on QLO, QHI: the
+     *  least of the Zobrist hashes of its eight reflections and
+     *  rotations, each moved to the corner of the board. */
+    static long key(long lo, long hi, long qLo, long qHi) {
+        int minCol, maxCol, minRow, maxRow;
+        minCol = minRow = SIZE;
+        maxCol = maxRow = -1;
+        for (int sq = Bitboard.first(lo, hi); sq >= 0;
+             sq = Bitboard.next(sq, lo, hi)) {
+            minCol = Math.min(minCol, sq % SIZE);
+            maxCol = Math.max(maxCol, sq % SIZE);
+            minRow = Math.min(minRow, sq / SIZE);
+            maxRow = Math.max(maxRow, sq / SIZE);
+        }
+        long k0, k1, k2, k3, k4, k5, k6, k7;
+        k0 = k1 = k2 = k3 = k4 = k5 = k6 = k7 = 0;
+        for (int sq = Bitboard.first(lo, hi); sq >= 0;
+             sq = Bitboard.next(sq, lo, hi)) {
+            Piece p = Bitboard.contains(qLo, qHi, sq) ? WHITE : EMPTY;
+            int c0 = sq % SIZE - minCol, c1 = maxCol - sq % SIZE,
+                r0 = sq / SIZE - minRow, r1 = maxRow - sq / SIZE;
+            k0 ^= Zobrist.key(p, r0 * SIZE + c0);
+            k1 ^= Zobrist.key(p, r0 * SIZE + c1);
+            k2 ^= Zobrist.key(p, r1 * SIZE + c0);
+            k3 ^= Zobrist.key(p, r1 * SIZE + c1);
+            k4 ^= Zobrist.key(p, c0 * SIZE + r0);
+            k5 ^= Zobrist.key(p, c1 * SIZE + r0);
+            k6 ^= Zobrist.key(p, c0 * SIZE + r1);
+            k7 ^= Zobrist.key(p, c1 * SIZE + r1);
+        }
+        return Math.min(Math.min(Math.min(k0, k1), Math.min(k2, k3)),
+                        Math.min(Math.min(k4, k5), Math.min(k6, k7)));
+    }
+
+    /** My tables, indexed by number of squares less one. */
+    private final HashFile[] _tables;
+}
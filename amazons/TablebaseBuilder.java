@@ -0,0 +1,297 @@
+package amazons;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static amazons.Board.SIZE;
+import static amazons.Piece.*;
+
+/** A builder of tablebases (see Tablebase) by retrograde analysis: the
+ *  table for regions of N squares is computed from those for smaller
+ *  regions, since every move in a region throws a spear into it and
+ *  leaves only smaller regions behind.  Each region's value is found by
+ *  a FillSolver that looks those smaller regions up in the tables
+ *  already built, so that it searches only one move deep.  The shapes of
+ *  N squares are found by adding a square to those of N - 1 squares in
+ *  every possible way, keeping one of each set of shapes that are
+ *  reflections, rotations or translations of each other and dropping
+ *  those that do not fit on the board.  They are divided into chunks of
+ *  CHUNK_SHAPES shapes, solved in parallel by workers on AI.HELPER_POOL,
+ *  each taking the next unsolved chunk when it finishes one.  Each chunk
+ *  is saved to its own file as soon as it is solved, and the chunks of N
+ *  squares are merged into the table for N once all are done, so that a
+ *  build that is interrupted resumes where it left off.  A build must
+ *  be resumed with the same number of queens.  A TablebaseBuilder is
+ *  used by one thread at a time.
+ *  @author Ruochen Liu
+ */
+final class TablebaseBuilder {
+
+    /** A builder that solves with WORKERS threads a tablebase of the
+     *  default size. */
+    TablebaseBuilder(int workers) {
+        this(workers, DEFAULT_SQUARES, DEFAULT_QUEENS);
+    }
+
+    /** A builder that solves with WORKERS threads a tablebase of regions
+     *  of up to SQUARES squares holding up to QUEENS queens. */
+    TablebaseBuilder(int workers, int squares, int queens) {
+        if (workers <= 0 || squares <= 0 || queens <= 0) {
+            throw Utils.error("tablebase parameters must be positive");
+        }
+        _workers = workers;
+        _squares = squares;
+        _queens = queens;
+    }
+
+    /** Build the tables of my tablebase missing from the directory named
+     *  DIR, creating it if need be.  Return the number of regions
+     *  solved. */
+    long build(String dir) throws IOException {
+        File directory = new File(dir);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create " + dir);
+        }
+        long result;
+        result = 0;
+        ArrayList<int[]> shapes = new ArrayList<>();
+        shapes.add(new int[] { 0 });
+        for (int n = 1; n <= _squares; n += 1) {
+            if (n > 1) {
+                shapes = grow(shapes);
+            }
+            if (!Tablebase.file(dir, n).exists()) {
+                result += build(dir, n, shapes);
+            }
+        }
+        return result;
+    }
+
+    /** Build the table for the SHAPES of N squares in the directory
+     *  named DIR, whose tables for fewer squares are complete, solving
+     *  the chunks not already saved there.  Return the number of regions
+     *  solved. */
+    private long build(String dir, int n, ArrayList<int[]> shapes)
+        throws IOException {
+        Tablebase smaller = new Tablebase(dir);
+        int chunks = (shapes.size() + CHUNK_SHAPES - 1) / CHUNK_SHAPES;
+        AtomicInteger next = new AtomicInteger();
+        long[] solved = new long[_workers];
+        Future<?>[] running = new Future<?>[_workers];
+        for (int w = 0; w < _workers; w += 1) {
+            int worker = w;
+            running[w] = AI.HELPER_POOL.submit(() -> {
+                    FillSolver solver = new FillSolver(SOLVER_CACHE_BITS);
+                    solver.setTablebase(smaller);
+                    for (int c = next.getAndIncrement(); c < chunks;
+                         c = next.getAndIncrement()) {
+                        String name = chunkName(dir, n, c);
+                        if (!new File(name).exists()) {
+                            solved[worker] +=
+                                solveChunk(name, shapes, c, solver);
+                        }
+                    }
+                    return null;
+                });
+        }
+        long result;
+        result = 0;
+        for (int w = 0; w < _workers; w += 1) {
+            try {
+                running[w].get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException("tablebase build failed: "
+                                                + excp.getMessage());
+            }
+            result += solved[w];
+        }
+        merge(dir, n, chunks);
+        return result;
+    }
+
+    /** Solve the regions of chunk C of SHAPES with SOLVER and save them
+     *  in the file named NAME.  Return the number of regions solved. */
+    private long solveChunk(String name, ArrayList<int[]> shapes, int c,
+                            FillSolver solver) throws IOException {
+        Board board = new Board();
+        for (int sq = 0; sq < Bitboard.SQUARES; sq += 1) {
+            board.putAt(SPEAR, sq);
+        }
+        HashSet<Long> seen = new HashSet<>();
+        ArrayList<Long> keys = new ArrayList<>();
+        ArrayList<Integer> values = new ArrayList<>();
+        int end = Math.min(shapes.size(), (c + 1) * CHUNK_SHAPES);
+        for (int s = c * CHUNK_SHAPES; s < end; s += 1) {
+            int[] shape = shapes.get(s);
+            long lo, hi;
+            lo = hi = 0;
+            for (int sq : shape) {
+                board.putAt(EMPTY, sq);
+                lo |= Bitboard.loBit(sq);
+                hi |= Bitboard.hiBit(sq);
+            }
+            for (int placed = 1; placed < 1 << shape.length; placed += 1) {
+                int queens = Integer.bitCount(placed);
+                if (queens > _queens || queens == shape.length) {
+                    continue;
+                }
+                long qLo, qHi;
+                qLo = qHi = 0;
+                for (int k = 0; k < shape.length; k += 1) {
+                    if ((placed & (1 << k)) != 0) {
+                        qLo |= Bitboard.loBit(shape[k]);
+                        qHi |= Bitboard.hiBit(shape[k]);
+                    }
+                }
+                long key = Tablebase.key(lo, hi, qLo, qHi);
+                if (seen.add(key)) {
+                    placeQueens(board, shape, placed, WHITE);
+                    keys.add(key);
+                    values.add(solver.value(board, lo, hi, WHITE,
+                                            Long.MAX_VALUE));
+                    placeQueens(board, shape, placed, EMPTY);
+                }
+            }
+            for (int sq : shape) {
+                board.putAt(SPEAR, sq);
+            }
+        }
+        long[] keyArray = new long[keys.size()];
+        int[] valueArray = new int[keys.size()];
+        for (int k = 0; k < keyArray.length; k += 1) {
+            keyArray[k] = keys.get(k);
+            valueArray[k] = values.get(k);
+        }
+        HashFile.write(name, keyArray, valueArray, keyArray.length);
+        return keyArray.length;
+    }
+
+    /** Put P on BOARD on the squares SHAPE[k] for which bit k of PLACED
+     *  is set. */
+    private static void placeQueens(Board board, int[] shape, int placed,
+                                    Piece p) {
+        for (int k = 0; k < shape.length; k += 1) {
+            if ((placed & (1 << k)) != 0) {
+                board.putAt(p, shape[k]);
+            }
+        }
+    }
+
+    /** Merge the CHUNKS chunk files for regions of N squares in the
+     *  directory named DIR into the table for N, and delete them. */
+    private void merge(String dir, int n, int chunks) throws IOException {
+        HashFile[] parts = new HashFile[chunks];
+        int size;
+        size = 0;
+        for (int c = 0; c < chunks; c += 1) {
+            parts[c] = new HashFile(chunkName(dir, n, c));
+            size += parts[c].size();
+        }
+        long[] keys = new long[size];
+        int[] values = new int[size];
+        int k;
+        k = 0;
+        for (HashFile part : parts) {
+            for (int j = 0; j < part.size(); j += 1, k += 1) {
+                keys[k] = part.key(j);
+                values[k] = part.value(j);
+            }
+        }
+        HashFile.write(Tablebase.file(dir, n).getPath(), keys, values, size);
+        for (int c = 0; c < chunks; c += 1) {
+            new File(chunkName(dir, n, c)).delete();
+        }
+    }
+
+    /** Return the name of the file for chunk C of the regions of N
+     *  squares in the directory named DIR. */
+    private static String chunkName(String dir, int n, int c) {
+        return Tablebase.file(dir, n).getPath() + "." + c;
+    }
+
+    /** Return the shapes made by adding a square next to one of SHAPES
+     *  in every possible way, one of each set that are reflections,
+     *  rotations or translations of each other, in order of their keys.
+     *  Each shape is an array of square indices, moved to the corner of
+     *  the board.  Shapes that do not fit on the board are left out. */
+    private static ArrayList<int[]> grow(ArrayList<int[]> shapes) {
+        TreeMap<Long, int[]> result = new TreeMap<>();
+        for (int[] shape : shapes) {
+            for (int sq : shape) {
+                for (int dc = -1; dc <= 1; dc += 1) {
+                    for (int dr = -1; dr <= 1; dr += 1) {
+                        int[] grown = add(shape, sq % SIZE + dc,
+                                          sq / SIZE + dr);
+                        if (grown != null) {
+                            long lo, hi;
+                            lo = hi = 0;
+                            for (int s : grown) {
+                                lo |= Bitboard.loBit(s);
+                                hi |= Bitboard.hiBit(s);
+                            }
+                            result.putIfAbsent(Tablebase.key(lo, hi, 0, 0),
+                                               grown);
+                        }
+                    }
+                }
+            }
+        }
+        ArrayList<int[]> grownShapes = new ArrayList<>();
+        for (Map.Entry<Long, int[]> entry : result.entrySet()) {
+            grownShapes.add(entry.getValue());
+        }
+        return grownShapes;
+    }
+
+    /** Return SHAPE with the square at COL, ROW (where either may be -1)
+     *  added, moved to the corner of the board, or null if that square
+     *  is already in SHAPE or the result does not fit on the board. */
+    private static int[] add(int[] shape, int col, int row) {
+        int shiftCol = col < 0 ? 1 : 0, shiftRow = row < 0 ? 1 : 0;
+        int[] result = new int[shape.length + 1];
+        for (int k = 0; k < shape.length; k += 1) {
+            int c = shape[k] % SIZE + shiftCol, r = shape[k] / SIZE + shiftRow;
+            if (c >= SIZE || r >= SIZE) {
+                return null;
+            }
+            result[k] = r * SIZE + c;
+        }
+        col += shiftCol;
+        row += shiftRow;
+        if (col >= SIZE || row >= SIZE) {
+            return null;
+        }
+        result[shape.length] = row * SIZE + col;
+        for (int k = 0; k < shape.length; k += 1) {
+            if (result[k] == result[shape.length]) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /** Default largest number of squares, and of queens, in a region in
+     *  a tablebase. */
+    private static final int DEFAULT_SQUARES = 9, DEFAULT_QUEENS = 2;
+
+    /** Number of shapes in a chunk. */
+    private static final int CHUNK_SHAPES = 1024;
+
+    /** Base 2 logarithm of the number of regions each worker's solver
+     *  caches. */
+    private static final int SOLVER_CACHE_BITS = 16;
+
+    /** Number of threads that solve regions. */
+    private final int _workers;
+
+    /** Largest number of squares, and of queens, in a region in my
+     *  tablebase. */
+    private final int _squares, _queens;
+}
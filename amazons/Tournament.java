@@ -0,0 +1,294 @@
+package amazons;
+
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static amazons.Piece.*;
+
+/** A match between two automated players, to compare engines: many
+ *  games, played without input or display (see Controller.playGame),
+ *  several at once on AI.HELPER_POOL, each by its own Controller, with
+ *  the players changing colors every game.  The results are judged by a
+ *  sequential probability ratio test (SPRT) of the hypothesis that the
+ *  first player is ELO1 Elo points stronger than the second against the
+ *  hypothesis that it is ELO0 stronger (see setSprt), and no new games
+ *  are started once either is accepted.  The time each player takes
+ *  over each of its moves is recorded in a Histogram, so that slow
+ *  moves show up even when the results do not suffer.  A Tournament is
+ *  run by one thread at a time.
+ *  @author Ruochen Liu
+ */
+final class Tournament {
+
+    /** A tournament of up to GAMES games between players created from the
+     *  templates FIRST and SECOND, playing CONCURRENCY games at once. */
+    Tournament(Player first, Player second, int games, int concurrency) {
+        if (games <= 0 || concurrency <= 0) {
+            throw Utils.error("game and concurrency counts must be"
+                              + " positive");
+        }
+        _players[0] = new TimedPlayer(first, _times[0]);
+        _players[1] = new TimedPlayer(second, _times[1]);
+        _games = games;
+        _concurrency = concurrency;
+    }
+
+    /** Give each side TOTAL nanoseconds for each game, plus INCREMENT
+     *  nanoseconds after each of its moves (see Clock).  A TOTAL of 0,
+     *  the default, leaves the players to their own time limits. */
+    void setTime(long total, long increment) {
+        if (total < 0 || increment < 0) {
+            throw Utils.error("times must be non-negative");
+        }
+        _total = total;
+        _increment = increment;
+    }
+
+    /** Test the hypothesis that the first player is ELO1 Elo points
+     *  stronger than the second against the hypothesis that it is ELO0
+     *  stronger, where ELO0 < ELO1. */
+    void setSprt(double elo0, double elo1) {
+        if (!(elo0 < elo1)) {
+            throw Utils.error("SPRT bounds out of order");
+        }
+        _elo0 = elo0;
+        _elo1 = elo1;
+    }
+
+    /** Play my games, reporting progress every REPORT_INTERVAL games and
+     *  the results at the end on OUT. */
+    void run(PrintStream out) {
+        AtomicInteger next = new AtomicInteger();
+        Future<?>[] running = new Future<?>[_concurrency];
+        for (int w = 0; w < _concurrency; w += 1) {
+            running[w] = AI.HELPER_POOL.submit(() -> {
+                    for (int game = next.getAndIncrement();
+                         game < _games && !decided();
+                         game = next.getAndIncrement()) {
+                        play(game, out);
+                    }
+                });
+        }
+        for (Future<?> worker : running) {
+            try {
+                worker.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException("tournament game failed: "
+                                                + excp.getMessage());
+            }
+        }
+        report(out);
+    }
+
+    /** Play game number GAME, in which the first player is white iff GAME
+     *  is even, and record its result, reporting on OUT if it is time. */
+    private void play(int game, PrintStream out) {
+        int white = game % 2;
+        Controller controller =
+            new Controller(new NullView(), null, QUIET, new TextPlayer(),
+                           _players[white]);
+        controller.setTime(_total, _increment);
+        Piece winner = controller.playGame(_players[white],
+                                           _players[1 - white]);
+        synchronized (this) {
+            int player = winner == WHITE ? white : 1 - white;
+            _wins[player][winner.ordinal()] += 1;
+            _played += 1;
+            if (_played % REPORT_INTERVAL == 0) {
+                out.printf("%d games: %d-%d, LLR %.2f%n", _played,
+                           wins(0), wins(1), llr(wins(0), wins(1), _elo0,
+                                                 _elo1));
+            }
+        }
+    }
+
+    /** Return true iff my SPRT has accepted one of its hypotheses. */
+    private synchronized boolean decided() {
+        double llr = llr(wins(0), wins(1), _elo0, _elo1);
+        return llr <= LOWER_BOUND || llr >= UPPER_BOUND;
+    }
+
+    /** Return the number of games won by PLAYER (0 for the first, 1 for
+     *  the second). */
+    private synchronized int wins(int player) {
+        return _wins[player][WHITE.ordinal()]
+            + _wins[player][BLACK.ordinal()];
+    }
+
+    /** Report the results of my games on OUT. */
+    private synchronized void report(PrintStream out) {
+        int first = wins(0), second = wins(1), games = first + second;
+        out.printf("Games: %d; first won %d (%d as white), second won %d"
+                   + " (%d as white)%n", games, first,
+                   _wins[0][WHITE.ordinal()], second,
+                   _wins[1][WHITE.ordinal()]);
+        if (games > 0) {
+            double score = (double) first / games;
+            double margin =
+                CONFIDENCE_Z * Math.sqrt(score * (1 - score) / games);
+            out.printf("Elo difference: %+.1f (95%%: %+.1f to %+.1f)%n",
+                       elo(score), elo(Math.max(0, score - margin)),
+                       elo(Math.min(1, score + margin)));
+        }
+        double llr = llr(first, second, _elo0, _elo1);
+        out.printf("SPRT [%.1f, %.1f]: LLR %.2f (%.2f, %.2f): %s%n",
+                   _elo0, _elo1, llr, LOWER_BOUND, UPPER_BOUND,
+                   llr >= UPPER_BOUND ? "H1 accepted"
+                   : llr <= LOWER_BOUND ? "H0 accepted" : "undecided");
+        for (int player = 0; player < 2; player += 1) {
+            Histogram times = _times[player];
+            out.printf("%s think time: %d moves, p50 %.1f ms, p99 %.1f ms,"
+                       + " max %.1f ms%n", player == 0 ? "First" : "Second",
+                       times.count(), millis(times.percentile(MEDIAN)),
+                       millis(times.percentile(P99)), millis(times.max()));
+        }
+    }
+
+    /** Return the difference in Elo rating at which the stronger player
+     *  expects the fraction SCORE of the points (infinite at 0 and 1). */
+    static double elo(double score) {
+        return -ELO_SCALE * Math.log10(1 / score - 1);
+    }
+
+    /** Return the expected score of a player ELO Elo points stronger than
+     *  its opponent. */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / ELO_SCALE));
+    }
+
+    /** Return the log-likelihood ratio of a player's WINS wins and
+     *  LOSSES losses (there are no draws in Amazons) under the hypothesis
+     *  that it is ELO1 stronger than its opponent, against the hypothesis
+     *  that it is ELO0 stronger. */
+    static double llr(int wins, int losses, double elo0, double elo1) {
+        double p0 = expectedScore(elo0), p1 = expectedScore(elo1);
+        return wins * Math.log(p1 / p0)
+            + losses * Math.log((1 - p1) / (1 - p0));
+    }
+
+    /** Return NANOS nanoseconds in milliseconds. */
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /** A Player that plays as the players created from a template do,
+     *  recording the time they take over each move. */
+    private static final class TimedPlayer extends Player {
+
+        /** A template for players created from TEMPLATE that record their
+         *  times in TIMES. */
+        TimedPlayer(Player template, Histogram times) {
+            this(null, null, template, times);
+        }
+
+        /** A player that plays PIECE under control of CONTROLLER as
+         *  PLAYER does, recording its times in TIMES. */
+        TimedPlayer(Piece piece, Controller controller, Player player,
+                    Histogram times) {
+            super(piece, controller);
+            _player = player;
+            _times = times;
+        }
+
+        @Override
+        Player create(Piece piece, Controller controller) {
+            return new TimedPlayer(piece, controller,
+                                   _player.create(piece, controller),
+                                   _times);
+        }
+
+        @Override
+        String myMove() {
+            long start = System.nanoTime();
+            String result = _player.myMove();
+            _times.record(System.nanoTime() - start);
+            return result;
+        }
+
+        @Override
+        void ponder() {
+            _player.ponder();
+        }
+
+        @Override
+        void stopPondering() {
+            _player.stopPondering();
+        }
+
+        @Override
+        String searchStats() {
+            return _player.searchStats();
+        }
+
+        /** The player (or template) that chooses my moves. */
+        private final Player _player;
+        /** Where my move times are recorded. */
+        private final Histogram _times;
+    }
+
+    /** A Reporter that reports only errors, on the standard error. */
+    private static final Reporter QUIET = new Reporter() {
+            @Override
+            public void reportError(String format, Object... args) {
+                System.err.printf(format, args);
+                System.err.println();
+            }
+
+            @Override
+            public void reportNote(String format, Object... args) {
+            }
+
+            @Override
+            public void reportMove(Move move) {
+            }
+        };
+
+    /** Scale of Elo ratings: the difference at which the stronger
+     *  player's odds of winning are ten to one. */
+    private static final double ELO_SCALE = 400;
+
+    /** Probabilities of accepting each hypothesis of the SPRT when the
+     *  other is true, and the bounds on the log-likelihood ratio that
+     *  follow from them. */
+    private static final double ALPHA = 0.05, BETA = 0.05,
+        LOWER_BOUND = Math.log(BETA / (1 - ALPHA)),
+        UPPER_BOUND = Math.log((1 - BETA) / ALPHA);
+
+    /** Default hypotheses of the SPRT, in Elo. */
+    private static final double DEFAULT_ELO0 = 0, DEFAULT_ELO1 = 10;
+
+    /** Number of standard deviations in a 95% confidence interval. */
+    private static final double CONFIDENCE_Z = 1.96;
+
+    /** Percentiles of think time reported. */
+    private static final double MEDIAN = 0.5, P99 = 0.99;
+
+    /** Nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Number of games between progress reports. */
+    private static final int REPORT_INTERVAL = 10;
+
+    /** The first and second players' templates. */
+    private final Player[] _players = new Player[2];
+    /** The first and second players' think times. */
+    private final Histogram[] _times = { new Histogram(), new Histogram() };
+
+    /** Most games to play, and number to play at once. */
+    private final int _games, _concurrency;
+
+    /** Time control for each game: see setTime. */
+    private long _total, _increment;
+
+    /** Hypotheses of the SPRT: see setSprt. */
+    private double _elo0 = DEFAULT_ELO0, _elo1 = DEFAULT_ELO1;
+
+    /** Games won by each player (first, second) as each color, indexed by
+     *  Piece ordinal. */
+    private final int[][] _wins = new int[2][Piece.values().length];
+
+    /** Number of games finished. */
+    private int _played;
+}
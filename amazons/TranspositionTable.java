@@ -0,0 +1,158 @@
+package amazons;
+
+/** A fixed-size table of search results, indexed by position hash (see
+ *  Board.hash).  Each entry records the depth searched, the kind of bound
+ *  the score represents, the score and the best move found, packed into a
+ *  single long, so the whole table is two primitive arrays.  Entries are
+ *  grouped in buckets of two: the first slot keeps the deepest (or most
+ *  recent search's) result for its index and the second is always
+ *  replaced, so deep results survive while shallow ones still get
+ *  cached.  The table may be shared by searches on several threads
+ *  without locking: each key is stored exclusive-or'ed with its entry,
+ *  so a slot torn by simultaneous writes fails to match on probe and
+ *  reads as empty.
+ *  @author Ruochen Liu
+ */
+final class TranspositionTable {
+
+    /** Bound type of a score that is exact. */
+    static final int EXACT = 0;
+    /** Bound type of a score that is a lower bound (the search failed
+     *  high). */
+    static final int LOWER = 1;
+    /** Bound type of a score that is an upper bound (the search failed
+     *  low). */
+    static final int UPPER = 2;
+
+    /** A table occupying about MEGABYTES megabytes. */
+    TranspositionTable(int megabytes) {
+        long entries = Math.max(2L, (long) megabytes * MEGABYTE / ENTRY_SIZE);
+        int size = Integer.highestOneBit((int) Math.min(entries, MAX_ENTRIES));
+        _keys = new long[size];
+        _data = new long[size];
+        _bucketMask = size / 2 - 1;
+    }
+
+    /** Return the number of entries I hold. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        for (int i = 0; i < _keys.length; i += 1) {
+            _keys[i] = _data[i] = 0;
+        }
+        _age = 0;
+    }
+
+    /** Mark the start of a new search, so that entries from earlier
+     *  searches are preferred for replacement. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Return the age given to entries stored in the current search. */
+    int searchAge() {
+        return _age;
+    }
+
+    /** Return the entry stored for position hash KEY, or 0 if there is
+     *  none.  Use depth, bound, score and move to decode the result. */
+    long probe(long key) {
+        int i = bucket(key);
+        for (int k = i; k < i + 2; k += 1) {
+            long data = _data[k];
+            if (data != 0 && (_keys[k] ^ data) == key) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /** Record that the position with hash KEY has SCORE, of bound type
+     *  BOUND, after a search of DEPTH levels that found packed move MOVE
+     *  (which may be Move.NONE). */
+    void store(long key, int depth, int bound, int score, int move) {
+        int i = bucket(key);
+        long first = _data[i], second = _data[i + 1];
+        boolean firstMatches = (_keys[i] ^ first) == key;
+        if (!firstMatches && (_keys[i + 1] ^ second) == key) {
+            i += 1;
+        } else if (!firstMatches && first != 0
+                   && age(first) == _age && depth(first) > depth) {
+            i += 1;
+        }
+        long old = _data[i];
+        if (move == Move.NONE && (_keys[i] ^ old) == key) {
+            move = move(old);
+        }
+        long data = VALID | ((long) _age << AGE_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+            | ((long) move << MOVE_SHIFT) | (score & SCORE_MASK);
+        _data[i] = data;
+        _keys[i] = key ^ data;
+    }
+
+    /** Return the depth recorded in ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the bound type (EXACT, LOWER or UPPER) recorded in ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the score recorded in ENTRY. */
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /** Return the packed move recorded in ENTRY. */
+    static int move(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & MOVE_MASK;
+    }
+
+    /** Return the search generation recorded in ENTRY. */
+    private static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    /** Return the index of the first slot of the bucket for KEY. */
+    private int bucket(long key) {
+        return (int) (key >>> Integer.SIZE & _bucketMask) * 2;
+    }
+
+    /** Bytes in a megabyte. */
+    private static final long MEGABYTE = 1 << 20;
+    /** Bytes used per entry. */
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+    /** Largest number of entries (a power of two array size). */
+    private static final int MAX_ENTRIES = 1 << 30;
+
+    /** Layout of an entry: score in bits 0-31, move in bits 32-52, depth
+     *  in bits 53-58, bound in bits 59-60, age in bits 61-62, and bit 63
+     *  set in every stored entry. */
+    private static final int MOVE_SHIFT = 32, DEPTH_SHIFT = 53,
+        BOUND_SHIFT = 59, AGE_SHIFT = 61;
+    /** Masks for the fields of an entry, after shifting. */
+    private static final int MOVE_MASK = (1 << 21) - 1, DEPTH_MASK = 63,
+        BOUND_MASK = 3, AGE_MASK = 3;
+    /** Mask for the score field. */
+    private static final long SCORE_MASK = 0xFFFFFFFFL;
+    /** Bit set in every stored entry. */
+    private static final long VALID = Long.MIN_VALUE;
+
+    /** Position hashes of the entries, each exclusive-or'ed with the
+     *  corresponding element of _data. */
+    private final long[] _keys;
+    /** Packed contents of the entries. */
+    private final long[] _data;
+    /** Mask selecting a bucket number from a hash. */
+    private final int _bucketMask;
+    /** Generation of the current search.  Only changed between
+     *  searches. */
+    private volatile int _age;
+}
@@ -1,5 +1,13 @@
 package amazons;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Random;
+
 import org.junit.Test;
 
 import static amazons.Piece.*;
@@ -16,7 +24,8 @@ public class UnitTest {
      * the arguments of runClasses to run other JUnit tests.
      */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class);
+        textui.runClasses(UnitTest.class, BoardTest.class,
+                          IteratorTests.class);
     }
 
     /**
@@ -58,6 +67,777 @@ public class UnitTest {
         assertEquals(SMILE, b.toString());
     }
 
+    /**
+     * Tests that the endgame solver counts the moves left in each side's
+     * region: white's corridor allows it three moves, if it moves one
+     * step at a time, against black's two.
+     */
+    @Test
+    public void testEndgame() {
+        Board b = new Board();
+        for (int sq = 0; sq < 100; sq += 1) {
+            b.put(SPEAR, Square.sq(sq));
+        }
+        b.put(WHITE, Square.sq(0, 0));
+        b.put(BLACK, Square.sq(0, 9));
+        for (int col = 1; col < 4; col += 1) {
+            b.put(EMPTY, Square.sq(col, 0));
+        }
+        for (int col = 1; col < 3; col += 1) {
+            b.put(EMPTY, Square.sq(col, 9));
+        }
+        assertEquals(2, b.regionCount());
+        assertTrue(Endgame.separated(b));
+        Endgame solver = new Endgame();
+        while (b.winner() == null) {
+            int move = solver.bestMove(new Board(b));
+            assertNotEquals(Move.NONE, move);
+            b.makeMove(move);
+        }
+        assertEquals(WHITE, b.winner());
+        assertEquals(5, b.numMoves());
+        assertFalse(Endgame.separated(new Board()));
+    }
+
+    /**
+     * Tests the fill solver against an exhaustive search on random small
+     * regions, and on a V with the queen at the point, which can use
+     * only one of its two squares.
+     */
+    @Test
+    public void testFillSolver() {
+        FillSolver solver = new FillSolver(10);
+        Board b = new Board();
+        fillSpears(b);
+        b.put(WHITE, Square.sq(1, 1));
+        b.put(EMPTY, Square.sq(0, 0));
+        b.put(EMPTY, Square.sq(2, 0));
+        int r = b.regionIndex(0);
+        assertEquals(1, solver.value(b, b.regionLo(r), b.regionHi(r),
+                                     WHITE, 1000));
+        Random gen = new Random(8);
+        for (int trial = 0; trial < 30; trial += 1) {
+            fillSpears(b);
+            for (int col = 3; col < 6; col += 1) {
+                for (int row = 3; row < 7; row += 1) {
+                    if (gen.nextInt(3) > 0) {
+                        b.put(EMPTY, Square.sq(col, row));
+                    }
+                }
+            }
+            b.put(WHITE, Square.sq(4, 4));
+            r = b.regionIndex(44);
+            String before = b.toString();
+            assertEquals(longestFill(b, WHITE, new HashMap<>()),
+                         solver.value(b, b.regionLo(r), b.regionHi(r),
+                                      WHITE, 1000000));
+            assertEquals(before, b.toString());
+        }
+        assertEquals(-1, solver.value(new Board(), ~0L, Bitboard.HI_MASK,
+                                      WHITE, 10));
+    }
+
+    /**
+     * Tests that evaluating a position with a spear throw pending, in
+     * which the mover has a region the fill solver would correct, leaves
+     * the board as it was, and so does a split-ply search of it.
+     */
+    @Test
+    public void testSplitPlyEvaluation() {
+        Board b = new Board();
+        fillSpears(b);
+        b.put(WHITE, Square.sq(1, 1));
+        b.put(EMPTY, Square.sq(0, 0));
+        b.put(EMPTY, Square.sq(2, 0));
+        b.put(EMPTY, Square.sq(2, 1));
+        for (int sq = 50; sq < 100; sq += 1) {
+            b.put(EMPTY, Square.sq(sq));
+        }
+        b.put(WHITE, Square.sq(0, 5));
+        b.put(BLACK, Square.sq(9, 9));
+        String before = b.toString();
+        long hash = b.hash();
+        AI ai = new AI();
+        ai.setHashSize(1);
+        ai.setSplitPly(true);
+        int move = ai.searchDepth(b, 4);
+        assertTrue(b.isLegal(Move.mv(move)));
+        assertEquals(before, b.toString());
+        assertEquals(hash, b.hash());
+
+        b.moveQueen(Square.sq(1, 1).index(), Square.sq(2, 1).index());
+        before = b.toString();
+        hash = b.hash();
+        new Evaluator().score(b);
+        assertEquals(before, b.toString());
+        assertEquals(hash, b.hash());
+        assertTrue(b.spearPending());
+    }
+
+    /**
+     * Tests that a hash file finds each of its keys, negative or positive,
+     * and nothing else, and that a small book built by parallel searches
+     * has a legal move for the positions on its main line only.
+     */
+    @Test
+    public void testBook() throws IOException {
+        File file = File.createTempFile("amazons", ".book");
+        file.deleteOnExit();
+        Random gen = new Random(19);
+        long[] keys = new long[1000];
+        int[] values = new int[keys.length];
+        for (int k = 0; k < keys.length; k += 1) {
+            keys[k] = gen.nextLong();
+            values[k] = k;
+        }
+        HashFile.write(file.getPath(), keys.clone(), values.clone(),
+                       keys.length);
+        HashFile table = new HashFile(file.getPath());
+        assertEquals(keys.length, table.size());
+        for (int k = 0; k < keys.length; k += 1) {
+            assertEquals(k, table.get(keys[k], -1));
+        }
+        assertEquals(-1, table.get(gen.nextLong(), -1));
+
+        BookBuilder builder =
+            new BookBuilder(new AI(), 2, 3, 2, 20000000L);
+        assertEquals(1 + 2 + 4, builder.build(file.getPath()));
+        Book book = new Book(file.getPath());
+        assertEquals(7, book.size());
+        Board b = new Board();
+        for (int ply = 0; ply < 3; ply += 1) {
+            int move = book.move(b);
+            assertNotEquals(Move.NONE, move);
+            b.makeMove(move);
+        }
+        assertEquals(Move.NONE, book.move(b));
+    }
+
+    /**
+     * Tests that a small tablebase agrees with the fill solver on random
+     * regions and their mirror images in other places, and that a build
+     * solves only the tables missing from its directory.
+     */
+    @Test
+    public void testTablebase() throws IOException {
+        File dir = Files.createTempDirectory("amazons").toFile();
+        try {
+            TablebaseBuilder builder = new TablebaseBuilder(2, 5, 2);
+            long solved = builder.build(dir.getPath());
+            Tablebase tables = new Tablebase(dir.getPath());
+            assertEquals(5, tables.maxSquares());
+            assertEquals(solved, tables.size());
+            FillSolver solver = new FillSolver(10);
+            Random gen = new Random(20);
+            Board b = new Board();
+            for (int trial = 0; trial < 200; trial += 1) {
+                fillSpears(b);
+                int col = 4 + gen.nextInt(2), row = 4 + gen.nextInt(2);
+                for (int k = 0; k < 4; k += 1) {
+                    b.put(EMPTY, Square.sq(col, row));
+                    col += gen.nextInt(3) - 1;
+                    row += gen.nextInt(3) - 1;
+                }
+                b.put(WHITE, Square.sq(col, row));
+                int r = b.regionIndex(Square.sq(col, row).index());
+                long lo = b.regionLo(r), hi = b.regionHi(r);
+                int value = tables.value(b, lo, hi);
+                assertEquals(solver.value(b, lo, hi, WHITE, 1000000), value);
+                Board mirror = new Board();
+                fillSpears(mirror);
+                for (int sq = 0; sq < 100; sq += 1) {
+                    Piece p = b.get(sq % 10, sq / 10);
+                    if (p != SPEAR) {
+                        mirror.put(p == EMPTY ? EMPTY : p.opponent(),
+                                   Square.sq(9 - sq / 10, sq % 10));
+                    }
+                }
+                r = mirror.regionIndex(Square.sq(9 - row, col).index());
+                assertEquals(value, tables.value(mirror, mirror.regionLo(r),
+                                                 mirror.regionHi(r)));
+            }
+            File last = Tablebase.file(dir.getPath(), 5);
+            long lastSize = new HashFile(last.getPath()).size();
+            assertTrue(last.delete());
+            assertEquals(lastSize, builder.build(dir.getPath()));
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Tests histogram percentiles, the Elo and SPRT arithmetic, and a
+     * short tournament of two games played at once.
+     */
+    @Test
+    public void testTournament() {
+        Histogram times = new Histogram();
+        for (int k = 1; k <= 1000; k += 1) {
+            times.record(k * 1000L);
+        }
+        assertEquals(1000, times.count());
+        assertEquals(1000000, times.max());
+        assertEquals(500000, times.percentile(0.5), 500000 / 8);
+        assertEquals(990000, times.percentile(0.99), 990000 / 8);
+        assertEquals(0, Tournament.elo(0.5), 1e-9);
+        assertEquals(400, Tournament.elo(10.0 / 11), 1e-9);
+        assertEquals(0, Tournament.llr(0, 0, 0, 10), 1e-9);
+        assertTrue(Tournament.llr(60, 40, 0, 10) > 0);
+        assertTrue(Tournament.llr(40, 60, 0, 10) < 0);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Tournament tournament = new Tournament(new MCTS(), new MCTS(), 2, 2);
+        tournament.setTime(500000000L, 0);
+        tournament.run(new PrintStream(output));
+        String report = output.toString();
+        assertTrue(report, report.startsWith("Games: 2;"));
+        assertTrue(report, report.contains("First think time"));
+    }
+
+    /**
+     * Tests perft counts against the known counts from the initial
+     * position and against a sequential count, with and without the
+     * cache.
+     */
+    @Test
+    public void testPerft() {
+        Board b = new Board();
+        Perft perft = new Perft();
+        assertEquals(1, perft.perft(b, 0));
+        assertEquals(2176, perft.perft(b, 1));
+        assertEquals(2176, perft.divide(b, 2).size());
+        Random random = new Random(5);
+        MoveList moves = new MoveList();
+        for (int k = 0; k < 40; k += 1) {
+            moves.clear();
+            b.generateMoves(b.turn(), moves);
+            b.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+        assertNull(b.winner());
+        long expected;
+        expected = 0;
+        moves.clear();
+        b.generateMoves(b.turn(), moves);
+        for (int k = 0; k < moves.size(); k += 1) {
+            b.makeMove(moves.get(k));
+            MoveList replies = new MoveList();
+            b.generateMoves(b.turn(), replies);
+            for (int j = 0; j < replies.size(); j += 1) {
+                b.makeMove(replies.get(j));
+                expected += b.countLegalMoves(b.turn());
+                b.undo();
+            }
+            b.undo();
+        }
+        String before = b.toString();
+        assertEquals(expected, perft.perft(b, 3));
+        assertEquals(expected, new Perft(1).perft(b, 3));
+        assertEquals(before, b.toString());
+    }
+
+    /**
+     * Tests that node- and depth-limited searches are repeatable, and
+     * that the bench visits the same nodes on every run.
+     */
+    @Test
+    public void testBench() {
+        AI ai = new AI();
+        ai.setHashSize(1);
+        Board b = Bench.position(Bench.positions() / 2);
+        int move = ai.searchNodes(b, 3000);
+        assertEquals(3000, ai.lastNodes());
+        assertTrue(b.isLegal(Move.mv(move)));
+        assertEquals(move, ai.searchNodes(b, 3000));
+        move = ai.searchDepth(b, 1);
+        assertEquals(1, ai.lastDepth());
+        long nodes = ai.lastNodes();
+        assertEquals(move, ai.searchDepth(b, 1));
+        assertEquals(nodes, ai.lastNodes());
+
+        Bench bench = new Bench(ai);
+        bench.setDepth(1);
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        long total = bench.run(out);
+        assertTrue(total > Bench.positions());
+        assertEquals(total, bench.run(out));
+    }
+
+    /**
+     * Tests that the timer stops a search of a position too big to finish
+     * at its hard limit, and that the move found by then is legal.
+     */
+    @Test
+    public void testSearchStops() {
+        final long limit = 200000000L, slack = 300000000L;
+        AI ai = new AI();
+        ai.setHashSize(1);
+        Board b = new Board();
+        for (int trial = 0; trial < 3; trial += 1) {
+            long start = System.nanoTime();
+            int move = ai.searchMove(b, limit);
+            long elapsed = System.nanoTime() - start;
+            assertTrue(elapsed >= limit);
+            assertTrue(elapsed < limit + slack);
+            assertTrue(b.isLegal(Move.mv(move)));
+            assertTrue(ai.lastNodes() > 0);
+        }
+    }
+
+    /**
+     * Tests pondering: on a hit (my opponent makes the expected move),
+     * the search of my reply continues in the same generation of the
+     * transposition table the ponder search filled; on a miss, the
+     * ponder search stops promptly and my search goes on from the move
+     * actually made.  Pondering never changes the game board.
+     */
+    @Test
+    public void testPonder() throws InterruptedException {
+        final long pause = 100;
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI());
+        controller.setTime(2000000000L, 0);
+        Board board = controller.board();
+        board.copy(Bench.position(Bench.positions() - 4));
+        AI template = new AI();
+        template.setHashSize(1);
+        template.setPonder(true);
+        AI ai = (AI) template.create(board.turn(), controller);
+        board.makeMove(ai.findMove());
+
+        int guess = ai.expectedMove(new Board(board));
+        assertNotEquals(Move.NONE, guess);
+        String before = board.toString();
+        long hash = board.hash();
+        ai.ponder();
+        int age = ai.table().searchAge();
+        Thread.sleep(pause);
+        ai.stopPondering();
+        assertEquals(before, board.toString());
+        assertEquals(hash, board.hash());
+        board.makeMove(guess);
+        assertTrue(TranspositionTable.depth(ai.table().probe(board.hash()))
+                   > 0);
+        Move move = ai.findMove();
+        assertEquals(age, ai.table().searchAge());
+        assertTrue(board.isLegal(move));
+        board.makeMove(move);
+
+        guess = ai.expectedMove(new Board(board));
+        before = board.toString();
+        hash = board.hash();
+        ai.ponder();
+        Thread.sleep(pause);
+        long start = System.nanoTime();
+        ai.stopPondering();
+        assertTrue(System.nanoTime() - start < 100000000L);
+        assertEquals(before, board.toString());
+        assertEquals(hash, board.hash());
+        MoveList replies = new MoveList();
+        board.generateMoves(board.turn(), replies);
+        board.makeMove(replies.get(replies.get(0) == guess ? 1 : 0));
+        move = ai.findMove();
+        assertTrue(board.isLegal(move));
+    }
+
+    /**
+     * Tests a Lazy SMP search with four threads: it finds a legal move
+     * within its time, leaves the board as it was, and has stopped every
+     * helper by the time it returns (whose pool threads may take a moment
+     * to go back to waiting).
+     */
+    @Test
+    public void testThreads() {
+        AI ai = new AI();
+        ai.setHashSize(1);
+        ai.setThreads(4);
+        Board b = Bench.position(3);
+        String before = b.toString();
+        long hash = b.hash();
+        long start = System.nanoTime();
+        int move = ai.searchMove(b, 200000000L);
+        assertTrue(System.nanoTime() - start < 2000000000L);
+        assertTrue(b.isLegal(Move.mv(move)));
+        assertEquals(before, b.toString());
+        assertEquals(hash, b.hash());
+        String stats = ai.searchStats();
+        assertTrue(stats, stats.contains("thread 3: depth"));
+        long deadline = System.nanoTime() + 1000000000L;
+        while (searchThreadRunning() && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        assertFalse(searchThreadRunning());
+    }
+
+    /**
+     * Tests that a principal variation search with aspiration windows
+     * finds the same value to a fixed depth as a plain alpha-beta search,
+     * on a late position of the bench and on random small ones, some of
+     * whose values fall outside the first aspiration window.  (A search
+     * that meets a finished game stops deepening, so the depth compared
+     * is the one completed.)
+     */
+    @Test
+    public void testPrincipalVariation() {
+        final int depth = 3;
+        AI ai = new AI();
+        ai.setHashSize(1);
+        Evaluator evaluator = new Evaluator();
+        Random gen = new Random(1);
+        int outside;
+        outside = 0;
+        for (int trial = 0; trial < 20; trial += 1) {
+            Board b = Bench.position(Bench.positions() - 1);
+            if (trial > 0) {
+                fillSpears(b);
+                for (int col = 2; col < 7; col += 1) {
+                    for (int row = 2; row < 6; row += 1) {
+                        if (gen.nextInt(4) > 0) {
+                            b.put(EMPTY, Square.sq(col, row));
+                        }
+                    }
+                }
+                b.put(WHITE, Square.sq(2 + gen.nextInt(5), 2));
+                b.put(BLACK, Square.sq(2 + gen.nextInt(5), 5));
+            }
+            if (b.winner() != null) {
+                continue;
+            }
+            ai.searchDepth(b, 1);
+            int first = ai.lastScore();
+            ai.searchDepth(b, depth);
+            assertEquals(alphaBeta(b, ai.lastDepth(), -Integer.MAX_VALUE,
+                                   Integer.MAX_VALUE, evaluator),
+                         ai.lastScore());
+            if (ai.lastDepth() == depth
+                && Math.abs((long) ai.lastScore() - first)
+                >= AI.ASPIRATION_WINDOW) {
+                outside += 1;
+            }
+        }
+        assertTrue(outside > 0);
+    }
+
+    /**
+     * Tests the statistics kept of a search.
+     */
+    @Test
+    public void testSearchStats() {
+        AI ai = new AI();
+        ai.setHashSize(1);
+        assertNull(ai.searchStats());
+        assertNull(new TextPlayer().searchStats());
+        ai.searchDepth(Bench.position(1), 2);
+        String stats = ai.searchStats();
+        assertTrue(stats, stats.contains("depth 1: score"));
+        assertTrue(stats, stats.contains("depth 2: score"));
+        assertTrue(stats, stats.contains("thread 0: depth 2, "
+                                         + ai.lastNodes() + " nodes"));
+
+        SearchStats record = new SearchStats();
+        record.addIteration(1, 5, Move.mv("d1-d2(d3)").packed(), 100, 10,
+                            5, 4, 3, 2000000);
+        record.addIteration(2, -5, Move.mv("d1-d2(d3)").packed(), 300, 30,
+                            15, 8, 6, 5000000);
+        record.addThread(2, 300);
+        assertEquals(2, record.iterations());
+        assertEquals(1, record.threads());
+        assertTrue(record.toString().contains("depth 2: score -5,"
+                                              + " d1-d2(d3), 200 nodes,"
+                                              + " 3 ms, cutoffs 20.0%"
+                                              + " (first move 75.0%)"));
+    }
+
+    /**
+     * Tests Clock's budgets: the share of the time left given to a move,
+     * the reserve and floor kept when little is left, the increment, an
+     * untimed clock, and that AI.budget's hard limit stays within them.
+     */
+    @Test
+    public void testClock() {
+        final long second = 1000000000L, milli = 1000000L;
+        Clock clock = new Clock();
+        assertFalse(clock.timed());
+        assertTrue(clock.charge(WHITE, Long.MAX_VALUE));
+        clock.moved(WHITE);
+        assertEquals(0, clock.remaining(WHITE));
+
+        clock.set(10 * second, 0);
+        assertTrue(clock.timed());
+        long available = 10 * second - Clock.SAFETY_MARGIN;
+        assertEquals(available / Clock.MAX_SHARE, clock.maxMoveTime(WHITE));
+        assertEquals(available / 10, clock.moveTime(WHITE, 10));
+        assertEquals(clock.maxMoveTime(WHITE), clock.moveTime(WHITE, 1));
+        assertEquals(clock.maxMoveTime(WHITE), clock.moveTime(WHITE, 0));
+
+        assertTrue(clock.charge(WHITE, 10 * second
+                                - Clock.SAFETY_MARGIN / 2));
+        assertEquals(Clock.MIN_MOVE_TIME / Clock.MAX_SHARE,
+                     clock.maxMoveTime(WHITE));
+        assertEquals(clock.maxMoveTime(WHITE), clock.moveTime(WHITE, 1));
+        assertEquals(10 * second, clock.remaining(BLACK));
+        assertFalse(clock.charge(WHITE, Clock.SAFETY_MARGIN / 2));
+        clock.reset();
+        assertEquals(10 * second, clock.remaining(WHITE));
+
+        clock.set(second, 100 * milli);
+        clock.moved(WHITE);
+        assertEquals(1100 * milli, clock.remaining(WHITE));
+        assertEquals((1100 * milli - Clock.SAFETY_MARGIN) / 100
+                     + 100 * milli, clock.moveTime(WHITE, 100));
+
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI());
+        AI ai = new AI(WHITE, controller);
+        assertTrue(ai.budget() > second);
+        controller.setTime(10 * second, 0);
+        clock = controller.clock();
+        for (long used : new long[] { 0, 9 * second, 950 * milli }) {
+            assertTrue(clock.charge(WHITE, used));
+            long hard = ai.budget();
+            assertTrue(hard <= clock.maxMoveTime(WHITE));
+            assertTrue(hard >= clock.moveTime(WHITE, Board.SIZE
+                                              * Board.SIZE / 2));
+        }
+        assertTrue(ai.budget() <= Clock.MIN_MOVE_TIME / Clock.MAX_SHARE);
+    }
+
+    /**
+     * Tests MCTS: a timed search finds a legal move, the tree for the
+     * position two plies on is kept only if that position is the one
+     * the tree leads to, even once the arena is more than half full, and
+     * is compacted so that it can grow again, and finished games in the
+     * tree are never expanded.
+     */
+    @Test
+    public void testMCTS() {
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new MCTS());
+        controller.setTime(400000000L, 0);
+        Board board = controller.board();
+        board.copy(Bench.position(Bench.positions() - 2));
+        MCTS mcts = new MCTS(board.turn(), controller);
+        mcts.setCapacity(1 << 11);
+        int move = mcts.findMove();
+        assertTrue(board.isLegal(Move.mv(move)));
+        MoveList replies = new MoveList();
+        board.makeMove(move);
+        board.generateMoves(board.turn(), replies);
+        board.makeMove(replies.get(0));
+        int empty = Long.numberOfTrailingZeros(~board.occupiedLo());
+        board.putAt(SPEAR, empty);
+        assertFalse(mcts.setRoot(board));
+        assertEquals(1, mcts.treeSize());
+        board.putAt(EMPTY, empty);
+        board.undo();
+        board.undo();
+
+        move = mcts.findMove();
+        assertTrue(board.isLegal(Move.mv(move)));
+        int full = mcts.treeSize();
+        assertTrue(full > (1 << 10));
+        board.makeMove(move);
+        replies.clear();
+        board.generateMoves(board.turn(), replies);
+        board.makeMove(replies.get(0));
+        assertTrue(mcts.setRoot(board));
+        int kept = mcts.treeSize();
+        assertTrue(kept < full);
+        move = mcts.findMove();
+        assertTrue(board.isLegal(Move.mv(move)));
+        assertTrue(mcts.treeSize() > kept);
+
+        board.init();
+        for (int sq = 0; sq < Bitboard.SQUARES; sq += 1) {
+            board.putAt(EMPTY, sq);
+        }
+        board.put(WHITE, 0, 0);
+        board.put(BLACK, 9, 9);
+        board.put(SPEAR, 8, 9);
+        board.put(SPEAR, 8, 8);
+        board.put(SPEAR, 9, 8);
+        replies.clear();
+        int n = board.generateMoves(WHITE, replies);
+        mcts = new MCTS(WHITE, controller);
+        mcts.setCapacity(1 << 16);
+        move = mcts.findMove();
+        assertTrue(board.isLegal(Move.mv(move)));
+        assertEquals(1 + n, mcts.treeSize());
+    }
+
+    /**
+     * Tests TranspositionTable: packing of scores, depths, bounds and
+     * moves, keeping the old move when none is given, the replacement
+     * policy within a bucket, and clear.
+     */
+    @Test
+    public void testTranspositionTable() {
+        TranspositionTable table = new TranspositionTable(1);
+        final int winning = Integer.MAX_VALUE - 1;
+        int move = Move.pack(1, 2, 3), other = Move.pack(4, 5, 6);
+        int[] scores = { 0, -1, -12345, winning, -winning };
+        for (int k = 0; k < scores.length; k += 1) {
+            long key = 1000L * k + 7;
+            table.store(key, k + 1, TranspositionTable.LOWER, scores[k], move);
+            long entry = table.probe(key);
+            assertEquals(scores[k], TranspositionTable.score(entry));
+            assertEquals(k + 1, TranspositionTable.depth(entry));
+            assertEquals(TranspositionTable.LOWER,
+                         TranspositionTable.bound(entry));
+            assertEquals(move, TranspositionTable.move(entry));
+        }
+        table.store(99, 100, TranspositionTable.EXACT, 5, move);
+        assertEquals(63, TranspositionTable.depth(table.probe(99)));
+        table.store(99, 4, TranspositionTable.UPPER, -5, Move.NONE);
+        long entry = table.probe(99);
+        assertEquals(move, TranspositionTable.move(entry));
+        assertEquals(4, TranspositionTable.depth(entry));
+        assertEquals(-5, TranspositionTable.score(entry));
+        assertEquals(0, table.probe(98));
+
+        long bucket = 5L << Integer.SIZE;
+        long key1 = bucket | 1, key2 = bucket | 2, key3 = bucket | 3;
+        table.store(key1, 10, TranspositionTable.EXACT, 1, move);
+        table.store(key2, 3, TranspositionTable.EXACT, 2, other);
+        assertEquals(1, TranspositionTable.score(table.probe(key1)));
+        assertEquals(2, TranspositionTable.score(table.probe(key2)));
+        table.store(key3, 2, TranspositionTable.EXACT, 3, other);
+        assertEquals(1, TranspositionTable.score(table.probe(key1)));
+        assertEquals(0, table.probe(key2));
+        assertEquals(3, TranspositionTable.score(table.probe(key3)));
+        table.newSearch();
+        table.store(key2, 1, TranspositionTable.EXACT, 4, other);
+        assertEquals(0, table.probe(key1));
+        assertEquals(4, TranspositionTable.score(table.probe(key2)));
+        assertEquals(3, TranspositionTable.score(table.probe(key3)));
+
+        table.clear();
+        assertEquals(0, table.probe(key2));
+        assertEquals(0, table.probe(key3));
+        assertEquals(0, table.probe(99));
+        assertEquals(0, table.probe(7));
+    }
+
+    /**
+     * Tests MoveList: growth past its initial capacity, indexOf, promote,
+     * and ordering by score with pickBest and sortByScore.
+     */
+    @Test
+    public void testMoveList() {
+        MoveList moves = new MoveList();
+        int n = 5000;
+        for (int k = 0; k < n; k += 1) {
+            moves.add(k + 1);
+        }
+        assertEquals(n, moves.size());
+        for (int k = 0; k < n; k += 1) {
+            assertEquals(k + 1, moves.get(k));
+        }
+        assertEquals(4500, moves.indexOf(4501));
+        assertEquals(-1, moves.indexOf(n + 1));
+
+        assertTrue(moves.promote(4501, 10));
+        assertEquals(4501, moves.get(10));
+        assertEquals(11, moves.get(4500));
+        assertFalse(moves.promote(1, 10));
+        assertFalse(moves.promote(n + 1, 0));
+
+        for (int k = 0; k < n; k += 1) {
+            moves.setScore(k, moves.get(k) % 7 - 3);
+        }
+        moves.pickBest(0);
+        assertEquals(3, moves.get(0) % 7 - 3);
+        moves.sortByScore(1);
+        assertEquals(n, moves.size());
+        for (int k = 2; k < n; k += 1) {
+            int before = moves.get(k - 1) % 7 - 3,
+                after = moves.get(k) % 7 - 3;
+            assertTrue(before >= after);
+            if (before == after) {
+                assertTrue(moves.get(k - 1) < moves.get(k));
+            }
+        }
+        for (int k = 1; k <= n; k += 1) {
+            assertTrue(moves.indexOf(k) >= 0);
+        }
+
+        moves.clear();
+        moves.add(Move.pack(1, 2, 3));
+        moves.add(Move.pack(4, 5, 6));
+        moves.setScore(0, -10);
+        moves.setScore(1, 10);
+        moves.sortByScore(0);
+        assertEquals(Move.pack(4, 5, 6), moves.get(0));
+        assertEquals(Move.pack(1, 2, 3), moves.get(1));
+    }
+
+    /** Fill B with spears. */
+    private void fillSpears(Board b) {
+        for (int sq = 0; sq < 100; sq += 1) {
+            b.put(SPEAR, Square.sq(sq));
+        }
+    }
+
+    /** Return true iff a thread of the shared search pool is running
+     *  (rather than waiting for a task). */
+    private boolean searchThreadRunning() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("amazons-search")
+                && thread.getState() == Thread.State.RUNNABLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the value of B, for the side to move, searched DEPTH moves
+     *  deep by plain alpha-beta search with the window ALPHA to BETA,
+     *  scoring positions by EVALUATOR. */
+    private int alphaBeta(Board b, int depth, int alpha, int beta,
+                          Evaluator evaluator) {
+        int sense = b.turn() == WHITE ? 1 : -1;
+        if (b.winner() != null) {
+            return -(Integer.MAX_VALUE - 1);
+        } else if (depth == 0) {
+            return sense * evaluator.score(b);
+        }
+        MoveList moves = new MoveList();
+        b.generateMoves(b.turn(), moves);
+        int best = -Integer.MAX_VALUE;
+        for (int i = 0; i < moves.size() && alpha < beta; i += 1) {
+            b.makeMove(moves.get(i));
+            best = Math.max(best, -alphaBeta(b, depth - 1, -beta, -alpha,
+                                             evaluator));
+            b.undo();
+            alpha = Math.max(alpha, best);
+        }
+        return best;
+    }
+
+    /** Return the most moves SIDE can make in a row on B, recording the
+     *  answers for positions in MEMO, by position hash. */
+    private int longestFill(Board b, Piece side, HashMap<Long, Integer> memo) {
+        Integer known = memo.get(b.hash());
+        if (known != null) {
+            return known;
+        }
+        int best = 0;
+        MoveList moves = new MoveList();
+        b.generateMoves(side, moves);
+        for (int k = 0; k < moves.size(); k += 1) {
+            b.makeMove(moves.get(k));
+            best = Math.max(best, 1 + longestFill(b, side, memo));
+            b.undo();
+        }
+        memo.put(b.hash(), best);
+        return best;
+    }
+
     private void makeSmile(Board b) {
         b.put(EMPTY, Square.sq(0, 3));
         b.put(EMPTY, Square.sq(0, 6));
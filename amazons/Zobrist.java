@@ -0,0 +1,50 @@
+package amazons;
+
+import java.util.Random;
+
+import static amazons.Bitboard.SQUARES;
+
+/** Random keys for Zobrist hashing of Amazons positions.  The hash of a
+ *  position is the exclusive or of the keys of its (piece, square) pairs,
+ *  together with SIDE when black is to move, so that it can be updated
+ *  with a few exclusive ors as pieces are placed and removed.  The keys
+ *  come from a fixed seed, so hashes are the same in every run (and may
+ *  be stored in files).
+ *  @author Ruochen Liu
+ */
+final class Zobrist {
+
+    /** Key included when black is to move. */
+    static final long SIDE;
+
+    /** Key included when a queen has moved and its spear throw is
+     *  pending (see Board.moveQueen). */
+    static final long PENDING;
+
+    /** Return the key for piece P (not EMPTY) on square index SQ. */
+    static long key(Piece p, int sq) {
+        return KEYS[p.ordinal()][sq];
+    }
+
+    /** Seed for the key generator. */
+    private static final long SEED = 0x61B_A3A2_0A5L;
+
+    /** KEYS[p][sq] is the key for Piece with ordinal p on square sq. */
+    private static final long[][] KEYS =
+        new long[Piece.values().length][SQUARES];
+
+    static {
+        Random gen = new Random(SEED);
+        for (long[] keys : KEYS) {
+            for (int sq = 0; sq < SQUARES; sq += 1) {
+                keys[sq] = gen.nextLong();
+            }
+        }
+        SIDE = gen.nextLong();
+        PENDING = gen.nextLong();
+    }
+
+    /** Not instantiable. */
+    private Zobrist() {
+    }
+}
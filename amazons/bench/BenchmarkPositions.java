@@ -0,0 +1,64 @@
+package amazons;
+
+import java.util.Random;
+
+/** The positions on which the benchmarks in this directory are run, one
+ *  for each phase of the game: the initial position ("opening"), and
+ *  those reached from it by MIDDLEGAME_PLIES and ENDGAME_PLIES random
+ *  moves ("middlegame" and "endgame").  The random moves are chosen with
+ *  a fixed seed, so that every run measures the same positions, and
+ *  never end the game, so that the side to move has a move.
+ *  @author Ruochen Liu
+ */
+final class BenchmarkPositions {
+
+    /** Return a new Board holding the position for PHASE. */
+    static Board position(String phase) {
+        int plies;
+        switch (phase) {
+        case "opening":
+            plies = 0;
+            break;
+        case "middlegame":
+            plies = MIDDLEGAME_PLIES;
+            break;
+        case "endgame":
+            plies = ENDGAME_PLIES;
+            break;
+        default:
+            throw Utils.error("unknown phase: %s", phase);
+        }
+        Board result = new Board();
+        Random random = new Random(SEED);
+        MoveList moves = new MoveList();
+        for (int k = 0; k < plies; k += 1) {
+            moves.clear();
+            result.generateMoves(result.turn(), moves);
+            result.makeMove(moves.get(random.nextInt(moves.size())));
+            if (result.winner() != null) {
+                result.undo();
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** Return N legal moves in BOARD, packed as by Move.pack, repeating
+     *  them in order if BOARD has fewer than N. */
+    static int[] moves(Board board, int n) {
+        MoveList moves = new MoveList();
+        board.generateMoves(board.turn(), moves);
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = moves.get(k * moves.size() / n);
+        }
+        return result;
+    }
+
+    /** Number of random moves to the middlegame and the endgame
+     *  positions. */
+    private static final int MIDDLEGAME_PLIES = 20, ENDGAME_PLIES = 44;
+
+    /** Seed of the random moves. */
+    private static final long SEED = 61;
+}
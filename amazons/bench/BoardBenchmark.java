@@ -0,0 +1,153 @@
+package amazons;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of the Board operations on which search spends its
+ *  time, in each position of BenchmarkPositions.  Operations on single
+ *  moves are measured over batches of BATCH moves spread over the legal
+ *  moves of the position, half of them made illegal for isLegal.  Each
+ *  benchmark returns a value computed from its results, so that JMH
+ *  keeps it from being optimized away.
+ *  @author Ruochen Liu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    /** The phase of the position measured (see BenchmarkPositions). */
+    @Param({ "opening", "middlegame", "endgame" })
+    public String phase;
+
+    /** Set up the position and moves for PHASE. */
+    @Setup
+    public void setUp() {
+        _board = BenchmarkPositions.position(phase);
+        _moves = BenchmarkPositions.moves(_board, BATCH);
+        _candidates = new Move[BATCH];
+        for (int k = 0; k < BATCH; k += 1) {
+            Move move = Move.mv(_moves[k]);
+            _candidates[k] = k % 2 == 0 ? move
+                : Move.mv(move.from(), move.to(), move.to());
+        }
+        Piece side = _board.turn();
+        int n;
+        n = 0;
+        for (int sq = 0; sq < Bitboard.SQUARES; sq += 1) {
+            if (_board.pieceAt(sq) == side) {
+                _queens[n] = Square.sq(sq);
+                n += 1;
+            }
+        }
+    }
+
+    /** Enumerate the legal moves by Board.legalMoves, returning their
+     *  number. */
+    @Benchmark
+    public int legalMoves() {
+        int result;
+        result = 0;
+        for (Iterator<Move> moves = _board.legalMoves(); moves.hasNext();
+             moves.next()) {
+            result += 1;
+        }
+        return result;
+    }
+
+    /** Generate the packed legal moves, as search does, returning their
+     *  number. */
+    @Benchmark
+    public int generateMoves() {
+        _list.clear();
+        return _board.generateMoves(_board.turn(), _list);
+    }
+
+    /** Enumerate the squares reachable from each queen of the side to
+     *  move, returning their number. */
+    @Benchmark
+    public int reachableFrom() {
+        int result;
+        result = 0;
+        for (Square queen : _queens) {
+            for (Iterator<Square> squares = _board.reachableFrom(queen, null);
+                 squares.hasNext(); squares.next()) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Make and undo each of a batch of moves, returning a combination
+     *  of the hashes of the positions they lead to. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long makeUndo() {
+        long result;
+        result = 0;
+        for (int move : _moves) {
+            _board.makeMove(move);
+            result ^= _board.hash();
+            _board.undo();
+        }
+        return result;
+    }
+
+    /** Determine the winner, if any. */
+    @Benchmark
+    public Piece winner() {
+        return _board.winner();
+    }
+
+    /** Check the legality of each of a batch of moves, returning the
+     *  number that are legal. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int isLegal() {
+        int result;
+        result = 0;
+        for (Move move : _candidates) {
+            if (_board.isLegal(move)) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Number of moves in a batch. */
+    static final int BATCH = 64;
+
+    /** Number of queens on each side. */
+    private static final int QUEENS = 4;
+
+    /** The position measured. */
+    private Board _board;
+
+    /** A batch of legal moves in _board, packed. */
+    private int[] _moves;
+
+    /** A batch of moves whose legality is checked. */
+    private Move[] _candidates;
+
+    /** The squares of the queens of the side to move. */
+    private final Square[] _queens = new Square[QUEENS];
+
+    /** Holds generated moves. */
+    private final MoveList _list = new MoveList();
+}
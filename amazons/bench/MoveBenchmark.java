@@ -0,0 +1,63 @@
+package amazons;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static amazons.BoardBenchmark.BATCH;
+
+/** JMH benchmark of parsing moves by Move.mv(String), as the Controller
+ *  does for every move entered, over batches of BATCH legal moves in
+ *  each position of BenchmarkPositions.
+ *  @author Ruochen Liu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+
+    /** The phase of the position measured (see BenchmarkPositions). */
+    @Param({ "opening", "middlegame", "endgame" })
+    public String phase;
+
+    /** Set up the moves parsed for PHASE. */
+    @Setup
+    public void setUp() {
+        int[] moves =
+            BenchmarkPositions.moves(BenchmarkPositions.position(phase),
+                                     BATCH);
+        for (int k = 0; k < BATCH; k += 1) {
+            _strings[k] = Move.mv(moves[k]).toString();
+        }
+    }
+
+    /** Parse each of a batch of moves, returning a combination of the
+     *  results. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int parse() {
+        int result;
+        result = 0;
+        for (String str : _strings) {
+            result ^= Move.mv(str).packed();
+        }
+        return result;
+    }
+
+    /** The moves parsed, as text. */
+    private final String[] _strings = new String[BATCH];
+}
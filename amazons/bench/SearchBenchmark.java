@@ -0,0 +1,62 @@
+package amazons;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmark of a fixed-depth search (see AI.searchDepth) by one
+ *  thread in each position of BenchmarkPositions.  Each search starts
+ *  from an empty transposition table, so that every invocation does the
+ *  same work.
+ *  @author Ruochen Liu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    /** The phase of the position searched (see BenchmarkPositions). */
+    @Param({ "opening", "middlegame", "endgame" })
+    public String phase;
+
+    /** The depth of the search, in moves. */
+    @Param({ "2" })
+    public int depth;
+
+    /** Set up the position for PHASE and the AI that searches it. */
+    @Setup
+    public void setUp() {
+        _board = BenchmarkPositions.position(phase);
+        _ai = new AI();
+        _ai.setHashSize(HASH_SIZE);
+    }
+
+    /** Search to DEPTH, returning the move found, packed. */
+    @Benchmark
+    public int search() {
+        return _ai.searchDepth(_board, depth);
+    }
+
+    /** Size of the transposition table, in megabytes: small, since it is
+     *  cleared before every search. */
+    private static final int HASH_SIZE = 4;
+
+    /** The position searched. */
+    private Board _board;
+
+    /** The searcher. */
+    private AI _ai;
+}